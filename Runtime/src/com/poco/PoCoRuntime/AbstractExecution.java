@@ -1,14 +1,23 @@
 package com.poco.PoCoRuntime;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Base class that both sequential and alternating executions inherit from. Defines functionality
  * that any execution should have.
  */
 public abstract class AbstractExecution extends EventResponder implements Matchable, Queryable {
+    /** modifiers as kept in modifier and childModifiers */
+    protected static final int NO_MODIFIER = 0, ZERO_PLUS = 1, ONE_PLUS = 2;
+    /** childModifiers entry of a child that is not an execution, i.e. an Exchange */
+    protected static final int NOT_EXECUTION = 3;
+
     protected boolean isZeroPlus, isOnePlus;
+    protected int modifier;
     protected ArrayList<EventResponder> children = new ArrayList<>();
+    /* modifier of each child, resolved when it is added so that queries do not inspect the child */
+    protected int[] childModifiers = new int[4];
 
     protected Boolean resultBool = false;
     protected SRE resultSRE = null;
@@ -25,20 +34,27 @@ public abstract class AbstractExecution extends EventResponder implements Matcha
         switch (modifier) {
             case "none":
                 isZeroPlus = isOnePlus = false;
+                this.modifier = NO_MODIFIER;
                 break;
             case "*":
                 isZeroPlus = true;
                 isOnePlus = false;
+                this.modifier = ZERO_PLUS;
                 break;
             case "+":
                 isZeroPlus = false;
                 isOnePlus = true;
+                this.modifier = ONE_PLUS;
                 break;
             default:
                 throw new PoCoException("Incorrect execution modifier " + modifier);
         }
     }
     public void addChild(EventResponder child) {
+        if (children.size() == childModifiers.length)
+            childModifiers = Arrays.copyOf(childModifiers, childModifiers.length * 2);
+        childModifiers[children.size()] = (child instanceof AbstractExecution)
+                ? ((AbstractExecution) child).modifier : NOT_EXECUTION;
         children.add(child);
     }
     public ArrayList<EventResponder> getChildren() {
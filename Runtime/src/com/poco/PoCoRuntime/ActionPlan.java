@@ -0,0 +1,276 @@
+package com.poco.PoCoRuntime;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What the root policy does with an SRE returned by its child, worked out once per SRE instead of on every event.
+ * The regexes, splits and constant conversions that used to run in DummyRootPolicy.queryAction happen when the plan
+ * is built; executing a plan only reads bound variables and the monitoring stack.
+ */
+final class ActionPlan {
+    /** Neutral result, or a positive SRE with nothing in it: the action proceeds */
+    static final int ALLOW = 0;
+    /** Negative result: the action is refused */
+    static final int DENY = 1;
+    /** Positive object value such as +`#int{42}': replaces the result of the action */
+    static final int REPLACE_RESULT = 2;
+    /** Positive action: allows the monitored action if it is that action, otherwise promotes it */
+    static final int PROMOTE = 3;
+
+    private static final Pattern FUN_PATTERN = Pattern.compile("(.+)\\((.*)\\)");
+    private static final Pattern OBJ_PATTERN = Pattern.compile("#(.+)\\{(.+)\\}");
+    private static final Pattern VAR_PATTERN = Pattern.compile("(.*)(\\$\\$(.+)\\$\\$)(.*)");
+    private static final Pattern RESULT_VAR_PATTERN = Pattern.compile("\\$\\$(.*)\\$\\$");
+
+    /** Plans shared by SREs with the same halves, e.g. the fresh SREs MapExecution returns per event */
+    private static final LruCache<String, ActionPlan> plans = new LruCache<>(SREUtil.OP_CACHE_SIZE);
+
+    final int kind;
+    /** version of the SRE the plan was built for */
+    final long version;
+
+    // DENY
+    final String negativeRE;
+
+    // REPLACE_RESULT: the bound variable to return, or else the constant
+    final int resultSlot;
+    final String resultVar;
+    final Object resultConstant;
+
+    // PROMOTE
+    /** the action to promote, with closure variables substituted and ".new" removed */
+    final String promotion;
+    /** promotion without its argument list, as pushed on the promoted-events stack */
+    final String promotedMethod;
+    final EventSignature promotionSig;
+    /** base type when the promotion names a type and its subtypes (Type+), otherwise null */
+    final String subtypeBase;
+    final ArgExtractor[] args;
+    /** invoker the compiler generated for the promotion, or null if it is promoted reflectively */
+    final Promoter.CompiledTarget compiledTarget;
+
+    private ActionPlan(int kind, long version, String negativeRE, String resultVar, Object resultConstant,
+                       String promotion, ArgExtractor[] args, Promoter.CompiledTarget compiledTarget) {
+        this.kind = kind;
+        this.version = version;
+        this.negativeRE = negativeRE;
+        this.resultVar = resultVar;
+        this.resultSlot = (resultVar == null) ? -1 : DataWH.slotOf(resultVar);
+        this.resultConstant = resultConstant;
+        this.promotion = promotion;
+        this.args = args;
+        this.compiledTarget = compiledTarget;
+        if (promotion == null) {
+            promotedMethod = null;
+            promotionSig = null;
+            subtypeBase = null;
+        } else {
+            int index = promotion.indexOf('(');
+            promotedMethod = ((index > -1) ? promotion.substring(0, index) : promotion).trim();
+            promotionSig = EventSignature.parse(promotion);
+            String sigFunName = (index > -1) ? promotion.substring(0, index) : promotion;
+            subtypeBase = sigFunName.endsWith("+") ? sigFunName.substring(0, sigFunName.length() - 1) : null;
+        }
+    }
+
+    private ActionPlan withVersion(long version) {
+        return new ActionPlan(kind, version, negativeRE, resultVar, resultConstant, promotion, args, compiledTarget);
+    }
+
+    /**
+     * @param sre     SRE returned by the child policy
+     * @param version the SRE's current version
+     * @return the plan for the SRE
+     */
+    static ActionPlan forSRE(SRE sre, long version) {
+        String positive = sre.getPositiveRE();
+        String negative = sre.getNegativeRE();
+        String key = positive + '\u0000' + negative;
+        ActionPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = build(positive, negative, version);
+            plans.put(key, plan);
+        }
+        return (plan.version == version) ? plan : plan.withVersion(version);
+    }
+
+    private static ActionPlan build(String positive, String negative, long version) {
+        boolean posMatch = positive != null && positive.trim().length() != 0 && !positive.equals("null");
+        if (!posMatch) {
+            if (negative != null) {
+                return new ActionPlan(DENY, version, negative, null, null, null, null, null);
+            }
+            return new ActionPlan(ALLOW, version, null, null, null, null, null, null);
+        }
+
+        // $$AddBCC$$(#javax.mail.Message{$$msg$$},#java.lang.String{domain})
+        // com.poco.RuntimeDemo.ShowDialog(#java.lang.String{$$Attachments_message})
+        Matcher objMth = OBJ_PATTERN.matcher(positive);
+        //not a function call but an object value, then it is the case of update the return value
+        if (!FUN_PATTERN.matcher(positive).find() && objMth.find()) {
+            String type = objMth.group(1).trim();
+            String value = objMth.group(2).trim();
+            Matcher varMth = RESULT_VAR_PATTERN.matcher(value);
+            if (varMth.find()) { //if the value is from the dataHW used and saved early
+                return new ActionPlan(REPLACE_RESULT, version, null, varMth.group(1).trim(), null, null, null, null);
+            }
+            return new ActionPlan(REPLACE_RESULT, version, null, null, constant(type, value), null, null, null);
+        }
+        return new ActionPlan(PROMOTE, version, null, null, null, resolvePromotion(positive),
+                argExtractors(positive), Promoter.compiledTarget(positive.trim()));
+    }
+
+    /**
+     * Substitutes closure variables into the promoted action and drops the ".new" of constructors, since event
+     * signatures do not include it.
+     */
+    private static String resolvePromotion(String resultPos) {
+        Matcher matcher = VAR_PATTERN.matcher(resultPos);
+        while (matcher.find()) {
+            // need delete (, otherwise cause issues.
+            String replaceStr = DataWH.closure.get(matcher.group(3).trim());
+            if (replaceStr == null)
+                break;
+            if (resultPos.indexOf('(') != -1 && replaceStr.indexOf('(') != -1)
+                replaceStr = replaceStr.substring(0, replaceStr.indexOf('('));
+            resultPos = resultPos.replace(matcher.group(2).trim(), replaceStr);
+            matcher = VAR_PATTERN.matcher(resultPos);
+        }
+        if (resultPos.indexOf('(') != -1) {
+            String funName = resultPos.substring(0, resultPos.indexOf('('));
+            String argPrt = resultPos.substring(resultPos.indexOf('('));
+            if (funName.endsWith(".new"))
+                resultPos = funName.substring(0, funName.length() - 4) + argPrt;
+        }
+        return resultPos;
+    }
+
+    /**
+     * @return one extractor per argument of the promoted action, or null if it takes none
+     */
+    private static ArgExtractor[] argExtractors(String resultPos) {
+        int lParen = resultPos.indexOf('(');
+        int rParen = resultPos.indexOf(')');
+        // get the parameter part of the string
+        if (lParen == -1 || rParen == -1 || rParen <= lParen || rParen == lParen + 1)
+            return null;
+        String[] paramStrs = resultPos.substring(lParen + 1, rParen).split(",");
+        ArrayList<ArgExtractor> extractors = new ArrayList<>();
+        // arg: #javax.mail.Message{$$msg}; arg: #java.lang.String{domain}
+        for (String paramStr : paramStrs) {
+            String value = paramStr;
+            int leftIndex = value.indexOf('{');
+            int rightIndex = value.indexOf('}');
+            if (leftIndex != -1 && rightIndex != -1 && rightIndex > leftIndex)
+                value = value.substring(leftIndex + 1, rightIndex);
+            ArgExtractor extractor = ArgExtractor.NULL;
+            if (value.length() > 0) {
+                Matcher matcher = VAR_PATTERN.matcher(value);
+                if (matcher.find()) { // it is variable (e.g., $$msg)
+                    extractor = new ArgExtractor(matcher.group(3).trim(), null);
+                } else {
+                    Matcher matcherType = OBJ_PATTERN.matcher(paramStr);
+                    if (matcherType.find())
+                        extractor = new ArgExtractor(null, argConstant(matcherType.group(1).trim(), value));
+                }
+            }
+            extractors.add(extractor);
+        }
+        return extractors.toArray(new ArgExtractor[extractors.size()]);
+    }
+
+    private static Object argConstant(String type, String value) {
+        // need add more cases
+        switch (type) {
+            case "int":
+            case "Integer":
+                return Integer.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    private static Object constant(String type, String value) {
+        switch (type) {
+            case "int":
+            case "Integer":
+                return Integer.valueOf(value);
+            case "long":
+                return Long.valueOf(value);
+            case "double":
+                return Double.valueOf(value);
+            case "float":
+                return Float.valueOf(value);
+            case "boolean":
+                return Boolean.valueOf(value);
+            case "char":
+                return Character.valueOf(value.charAt(0));
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * @return the value that replaces the result of the action
+     */
+    Object newResult() {
+        if (resultVar == null)
+            return resultConstant;
+        if (resultSlot != -1)
+            return DataWH.getValue(resultSlot);
+        return DataWH.getValue(resultVar);
+    }
+
+    /**
+     * @return arguments for the promoted action, or null if it takes none
+     */
+    Object[] promotionArgs() {
+        if (args == null)
+            return null;
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = args[i].extract();
+        }
+        return values;
+    }
+
+    /**
+     * Produces one argument of a promoted action: either a constant from the SRE or the current value of a bound
+     * variable.
+     */
+    static final class ArgExtractor {
+        static final ArgExtractor NULL = new ArgExtractor(null, null);
+
+        private final String varName;
+        private final int slot;
+        private final Object constant;
+
+        ArgExtractor(String varName, Object constant) {
+            this.varName = varName;
+            this.slot = (varName == null) ? -1 : DataWH.slotOf(varName);
+            this.constant = constant;
+        }
+
+        Object extract() {
+            if (varName == null)
+                return constant;
+            String type = (slot != -1) ? DataWH.getType(slot) : DataWH.getType(varName);
+            Object value = (slot != -1) ? DataWH.getValue(slot) : DataWH.getValue(varName);
+            if (!"java.lang.String".equals(type))
+                return value;
+            // closure variables inside a bound string are substituted when the argument is used
+            String str = value.toString();
+            Matcher matcher = VAR_PATTERN.matcher(str);
+            while (matcher.find()) {
+                String val = DataWH.closure.get(matcher.group(3).trim());
+                if (val == null)
+                    break;
+                str = str.replace(matcher.group(2), val);
+                matcher = VAR_PATTERN.matcher(str);
+            }
+            return str;
+        }
+    }
+}
@@ -8,6 +8,9 @@ public class BopSRE extends SRE {
     private String srebop;
     SRE sre1;
     SRE sre2;
+    // value of the operation, valid while resolvedVersion matches version()
+    private SRE resolved = null;
+    private long resolvedVersion = -1;
 
     public BopSRE(String srebop, SRE sre1, SRE sre2) {
         this.srebop = srebop;
@@ -21,6 +24,7 @@ public class BopSRE extends SRE {
 
     public void setSRE1(SRE sre1) {
         this.sre1 = sre1;
+        touch();
     }
 
     public SRE getSre2() {
@@ -29,19 +33,29 @@ public class BopSRE extends SRE {
 
     public void setSRE2(SRE sre2) {
         this.sre2 = sre2;
+        touch();
     }
 
     @Override
-    protected SRE genSRE() {
-        if (srebop != null) {
+    long version() {
+        return Math.max(super.version(), Math.max(versionOf(sre1), versionOf(sre2)));
+    }
+
+    @Override
+    protected synchronized SRE genSRE() {
+        if (srebop == null || sre1 == null || sre2 == null)
+            return null;
+        long current = version();
+        if (resolvedVersion != current) {
             SRE tempSRE1 = SREUtil.getBaseSRE(this.sre1);
             SRE tempSRE2 = SREUtil.getBaseSRE(this.sre2);
-            return SREUtil.performBOPs(srebop, tempSRE1, tempSRE2);
-        } else
-            return null;
+            resolved = SREUtil.performBOPs(srebop, tempSRE1, tempSRE2);
+            resolvedVersion = current;
+        }
+        return resolved;
     }
 
     public String getSrebop() {
         return srebop;
     }
-}
\ No newline at end of file
+}
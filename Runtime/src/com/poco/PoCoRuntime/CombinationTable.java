@@ -0,0 +1,208 @@
+package com.poco.PoCoRuntime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Combined results of a CombinedPolicy whose children can only return constant SREs, worked out for every tuple of
+ * child results when the tree is built. An event then resolves to the combined SRE by indexing, without any SRE
+ * operation.
+ *
+ * A child's possible results are the SRE objects its Exchange leaves return (or the values of a child tree that has
+ * a table itself), plus null for not accepting the event. Results are told apart by identity, so a child that
+ * returns anything else makes the lookup miss and the node combines that event's results as usual.
+ *
+ * Positions are mixed-radix numbers over the children's result indexes, first child most significant. Besides the
+ * full tuples, the table records for every prefix of the children whether all its completions give the same value,
+ * so the node can stop querying as soon as the result is decided.
+ */
+final class CombinationTable {
+    /** most tuples a table is built for */
+    static final int MAX_ENTRIES = 4096;
+
+    /** code of a null result: no child accepted the event */
+    static final int NULL_RESULT = -1;
+    /** code of a prefix whose completions give different values */
+    static final int UNDECIDED = -2;
+
+    /* per child: result -> index; index 0 is reserved for null */
+    private final List<IdentityHashMap<SRE, Integer>> outcomes;
+    private final int[] radixes;
+    /* distinct combined values */
+    private final SRE[] values;
+    /* levels[i][prefix]: value code once children 0..i have returned the results encoded by prefix */
+    private final int[][] levels;
+
+    private CombinationTable(List<IdentityHashMap<SRE, Integer>> outcomes, int[] radixes, SRE[] values, int[][] levels) {
+        this.outcomes = outcomes;
+        this.radixes = radixes;
+        this.values = values;
+        this.levels = levels;
+    }
+
+    /**
+     * Builds the table for a node, combining every tuple of its children's results with the node's operator.
+     *
+     * @return the table, or null if a child can return SREs that are not constant or there are more than
+     *         MAX_ENTRIES tuples
+     */
+    static CombinationTable build(CombinedPolicy node) {
+        Policy[] children = node.getChildren();
+        if (children.length == 0)
+            return null;
+        List<IdentityHashMap<SRE, Integer>> outcomes = new ArrayList<>(children.length);
+        List<List<SRE>> results = new ArrayList<>();
+        int[] radixes = new int[children.length];
+        long total = 1;
+        for (int i = 0; i < children.length; i++) {
+            List<SRE> constants = constantResults(children[i]);
+            if (constants == null)
+                return null;
+            List<SRE> childResults = new ArrayList<>();
+            childResults.add(null);
+            IdentityHashMap<SRE, Integer> childOutcomes = new IdentityHashMap<>();
+            outcomes.add(childOutcomes);
+            for (SRE sre : constants) {
+                if (!childOutcomes.containsKey(sre)) {
+                    childOutcomes.put(sre, childResults.size());
+                    childResults.add(sre);
+                }
+            }
+            results.add(childResults);
+            radixes[i] = childResults.size();
+            total *= radixes[i];
+            if (total > MAX_ENTRIES)
+                return null;
+        }
+
+        List<SRE> values = new ArrayList<>();
+        HashMap<String, List<Integer>> valuesByText = new HashMap<>();
+        int[] entries = new int[(int) total];
+        SRE[] tuple = new SRE[children.length];
+        for (int t = 0; t < entries.length; t++) {
+            for (int i = children.length - 1, rest = t; i >= 0; i--) {
+                tuple[i] = results.get(i).get(rest % radixes[i]);
+                rest /= radixes[i];
+            }
+            entries[t] = intern(node.combineAll(tuple), values, valuesByText);
+        }
+
+        int[][] levels = new int[children.length][];
+        levels[children.length - 1] = entries;
+        for (int i = children.length - 2; i >= 0; i--) {
+            int[] next = levels[i + 1];
+            int radix = radixes[i + 1];
+            int[] level = new int[next.length / radix];
+            for (int prefix = 0; prefix < level.length; prefix++) {
+                int code = next[prefix * radix];
+                for (int k = 1; k < radix && code != UNDECIDED; k++) {
+                    if (next[prefix * radix + k] != code)
+                        code = UNDECIDED;
+                }
+                level[prefix] = code;
+            }
+            levels[i] = level;
+        }
+        return new CombinationTable(outcomes, radixes, values.toArray(new SRE[values.size()]), levels);
+    }
+
+    /**
+     * @return the constant SREs a policy can return, or null if it can return others
+     */
+    static List<SRE> constantResults(Policy policy) {
+        if (policy instanceof CombinedPolicy) {
+            CombinationTable table = ((CombinedPolicy) policy).getCombinationTable();
+            if (table == null)
+                return null;
+            List<SRE> constants = new ArrayList<>();
+            for (SRE value : table.values)
+                constants.add(value);
+            return constants;
+        }
+        if (policy instanceof TreePolicy)
+            return (((TreePolicy) policy).getTree() == null) ? null : constantResults(((TreePolicy) policy).getTree());
+        if (policy.getRootExecution() == null)
+            return null;
+        List<SRE> constants = new ArrayList<>();
+        return collectConstants(policy.getRootExecution(), constants) ? constants : null;
+    }
+
+    private static boolean collectConstants(EventResponder responder, List<SRE> constants) {
+        if (responder instanceof Exchange) {
+            SRE sre = ((Exchange) responder).getReturnSRE();
+            // BopSRE and UopSRE values are computed, and can change with their operands
+            if (sre != null && sre.getClass() != SRE.class)
+                return false;
+            if (sre != null)
+                constants.add(sre);
+            return true;
+        }
+        // a map execution combines its children's results into new SREs
+        if (!(responder instanceof AbstractExecution) || responder instanceof MapExecution)
+            return false;
+        for (EventResponder child : ((AbstractExecution) responder).getChildren()) {
+            if (!collectConstants(child, constants))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return code of the value, sharing one SRE object between equal values so that a parent table can tell them
+     *         apart by identity
+     */
+    private static int intern(SRE sre, List<SRE> values, HashMap<String, List<Integer>> valuesByText) {
+        if (sre == null)
+            return NULL_RESULT;
+        String text = sre.getPositiveRE() + "\u0000" + sre.getNegativeRE();
+        List<Integer> candidates = valuesByText.get(text);
+        if (candidates == null) {
+            candidates = new ArrayList<>();
+            valuesByText.put(text, candidates);
+        }
+        for (int code : candidates) {
+            if (SREUtil.isEquals(values.get(code), sre))
+                return code;
+        }
+        values.add(sre);
+        candidates.add(values.size() - 1);
+        return values.size() - 1;
+    }
+
+    /**
+     * @param position position after the children before child, 0 for the first child
+     * @param child    index of the child
+     * @param result   the child's result
+     * @return position after the child, or -1 if the result is not one the table was built for
+     */
+    int advance(int position, int child, SRE result) {
+        int index = 0;
+        if (result != null) {
+            Integer known = outcomes.get(child).get(result);
+            if (known == null)
+                return -1;
+            index = known;
+        }
+        return position * radixes[child] + index;
+    }
+
+    /**
+     * @return code of the value all completions of the position after child give, or UNDECIDED
+     */
+    int decided(int child, int position) {
+        return levels[child][position];
+    }
+
+    /**
+     * @return the value for a code other than UNDECIDED
+     */
+    SRE value(int code) {
+        return (code == NULL_RESULT) ? null : values[code];
+    }
+
+    int size() {
+        return levels[levels.length - 1].length;
+    }
+}
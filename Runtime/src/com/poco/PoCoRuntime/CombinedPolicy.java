@@ -0,0 +1,287 @@
+package com.poco.PoCoRuntime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node of a policy tree (tree t = Union(P1(), P2()) in a metapolicy). Every event is passed to all children and the
+ * SREs they return are combined with the tree's SRE binary operator, folding from the left in child order.
+ *
+ * A child that does not accept the event counts as Neutral. If no child accepts it, the node does not accept it
+ * either and query returns null, as a single policy would.
+ *
+ * Children are independent, so once there are PARALLEL_THRESHOLD of them they are queried at the same time on a
+ * shared fork-join pool, and a query takes about as long as its slowest child. Each child is still queried by one
+ * thread at a time, since the node waits for all of them before it returns.
+ *
+ * With setShortCircuit(true), once the results so far decide the outcome on their own (see SREUtil.isAbsorbing),
+ * e.g. a Punion with a negative half that denies everything, the remaining children are skipped and the node counts
+ * the child queries it saves. This changes what the tree enforces: a skipped child does not see the event, so its
+ * executions do not advance, and its later results can differ from those it would give in a tree that queries every
+ * child. It is off by default. Skipping only happens when children are queried sequentially, where the same results
+ * always skip the same children; in parallel every child is queried, since a child whose query had already started
+ * would see the event or not depending on thread scheduling.
+ *
+ * When every child can only return constant SREs, precombine builds a CombinationTable, and events are resolved by
+ * indexing it instead of running SRE operations. The compiler calls it for trees whose children are like that.
+ */
+public class CombinedPolicy extends Policy {
+    /** number of children from which they are queried in parallel */
+    public static final int PARALLEL_THRESHOLD = 4;
+
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    private final String srebop;
+    private final Policy[] children;
+    private boolean parallel;
+    private boolean shortCircuit = false;
+    private CombinationTable table = null;
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong childQueries = new AtomicLong();
+    private final AtomicLong savedQueries = new AtomicLong();
+    private volatile int lastSavedQueries = 0;
+
+    /**
+     * @param srebop   SRE binary operator combining the results: Union, Punion, Disjunction, Conjunction or Equals
+     * @param children policies to query
+     */
+    public CombinedPolicy(String srebop, Policy... children) {
+        this.srebop = srebop;
+        this.children = children;
+        this.parallel = children.length >= PARALLEL_THRESHOLD;
+    }
+
+    public String getSrebop() {
+        return srebop;
+    }
+
+    public Policy[] getChildren() {
+        return children.clone();
+    }
+
+    /**
+     * Overrides the choice made from the number of children, e.g. for few children with expensive queries.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Combines every tuple of the children's results now, so that events only need a table lookup. Call it once the
+     * children are built; child trees should be precombined first.
+     *
+     * @return true if the table was built, false if a child can return SREs that are not constant or there are too
+     *         many tuples; the node then combines results as they come
+     */
+    public boolean precombine() {
+        table = CombinationTable.build(this);
+        return table != null;
+    }
+
+    public boolean isPrecombined() {
+        return table != null;
+    }
+
+    CombinationTable getCombinationTable() {
+        return table;
+    }
+
+    /**
+     * @param shortCircuit true to skip the remaining children once the result is decided, when they are queried
+     *                     sequentially (see the class comment)
+     */
+    public void setShortCircuit(boolean shortCircuit) {
+        this.shortCircuit = shortCircuit;
+    }
+
+    /**
+     * @return number of events this node has been queried with
+     */
+    public long getEvents() {
+        return events.get();
+    }
+
+    /**
+     * @return number of child queries made
+     */
+    public long getChildQueries() {
+        return childQueries.get();
+    }
+
+    /**
+     * @return number of child queries skipped because the result was already decided
+     */
+    public long getSavedQueries() {
+        return savedQueries.get();
+    }
+
+    /**
+     * @return child queries saved on the most recent event
+     */
+    public int getLastSavedQueries() {
+        return lastSavedQueries;
+    }
+
+    @Override
+    public boolean accepts(Event event) {
+        for (Policy child : children) {
+            if (child.accepts(event))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public SRE query(Event event) {
+        if (children.length == 0)
+            return null;
+        events.incrementAndGet();
+        Fold fold = new Fold(table);
+        int saved = (parallel && children.length > 1) ? queryParallel(event, fold) : querySequential(event, fold);
+        childQueries.addAndGet(children.length - saved);
+        savedQueries.addAndGet(saved);
+        lastSavedQueries = saved;
+        return fold.result();
+    }
+
+    /**
+     * @return number of children not queried
+     */
+    private int querySequential(Event event, Fold fold) {
+        for (int i = 0; i < children.length; i++) {
+            if (fold.add(children[i].query(event), i < children.length - 1))
+                return children.length - 1 - i;
+        }
+        return 0;
+    }
+
+    /**
+     * Queries every child, even if the result is decided early, so that which children see the event does not depend
+     * on scheduling.
+     *
+     * @return number of children not queried, always 0
+     */
+    private int queryParallel(Event event, Fold fold) {
+        List<ChildQuery> queries = new ArrayList<>(children.length);
+        for (int i = 1; i < children.length; i++) {
+            ChildQuery query = new ChildQuery(children[i], event);
+            pool.execute(query);
+            queries.add(query);
+        }
+        // the calling thread takes the first child instead of waiting idle
+        fold.add(children[0].query(event), false);
+        for (ChildQuery query : queries) {
+            fold.add(query.join(), false);
+        }
+        return 0;
+    }
+
+    private static SRE neutral() {
+        return new SRE(null, null);
+    }
+
+    private static SRE orNeutral(SRE sre) {
+        return (sre == null) ? neutral() : sre;
+    }
+
+    /**
+     * Combines the results of all children, without skipping any.
+     */
+    SRE combineAll(SRE[] results) {
+        Fold fold = new Fold(null);
+        for (SRE result : results) {
+            fold.add(result, false);
+        }
+        return fold.result();
+    }
+
+    /**
+     * Folds the children's results with the operator, from the left, or looks them up in the combination table.
+     */
+    private final class Fold {
+        private final CombinationTable table;
+        private final SRE[] results = new SRE[children.length];
+        private int count = 0;
+        /* position in the table, or -1 without a table or once a result is missing from it */
+        private int position;
+        private SRE combined = null;
+        private boolean accepted = false;
+
+        Fold(CombinationTable table) {
+            this.table = table;
+            this.position = (table == null) ? -1 : 0;
+        }
+
+        /**
+         * @param result    a child's result, null if it did not accept the event
+         * @param remaining true if children are left to fold in
+         * @return true if the remaining children cannot change the result; it is final then
+         */
+        boolean add(SRE result, boolean remaining) {
+            int child = count++;
+            results[child] = result;
+            if (position >= 0) {
+                position = table.advance(position, child, result);
+                if (position >= 0)
+                    return remaining && shortCircuit
+                            && table.decided(child, position) != CombinationTable.UNDECIDED;
+                // a result the table was not built for: combine the results so far instead
+                for (int i = 0; i < child; i++) {
+                    fold(results[i]);
+                }
+            }
+            fold(result);
+            if (!remaining || !shortCircuit || !accepted || !SREUtil.isAbsorbing(srebop, combined))
+                return false;
+            // the remaining children would all give this value; combining with Neutral gives it as well
+            combined = combine(combined, neutral());
+            return true;
+        }
+
+        private void fold(SRE result) {
+            if (result != null)
+                accepted = true;
+            SRE value = orNeutral(SREUtil.getBaseSRE(result));
+            combined = (combined == null) ? value : combine(combined, value);
+        }
+
+        /**
+         * @return combined SRE, or null if no child accepted the event
+         */
+        SRE result() {
+            if (position >= 0)
+                return table.value(table.decided(count - 1, position));
+            return accepted ? combined : null;
+        }
+
+        private SRE combine(SRE sre1, SRE sre2) {
+            // performBOPs gives null when both operands are empty, i.e. Neutral
+            return orNeutral(SREUtil.performBOPs(srebop, sre1, sre2));
+        }
+    }
+
+    private static class ChildQuery extends RecursiveTask<SRE> {
+        private static final long serialVersionUID = 1L;
+
+        private final Policy child;
+        private final Event event;
+
+        ChildQuery(Policy child, Event event) {
+            this.child = child;
+            this.event = event;
+        }
+
+        @Override
+        protected SRE compute() {
+            return child.query(event);
+        }
+    }
+}
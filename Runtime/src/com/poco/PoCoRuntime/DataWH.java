@@ -4,47 +4,105 @@ package com.poco.PoCoRuntime;
  * Created by caoyan on 3/28/15.
  */
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Global store for policy closures and bound variables.
+ *
+ * Bound variables live in slots. Each generated aspect reserves a contiguous block of slots when its class is
+ * initialized, one per variable the compiler found, and its advice binds a variable by writing its slot directly.
+ * The runtime still looks variables up by name when it resolves SRE strings, through a name-to-slot map that only
+ * changes while aspects are initialized.
+ *
+ * Slots are kept in fixed-size chunks that never move once they exist. Reserving slots for another aspect may add
+ * chunks, but only the array of chunk references is copied, so a bind that runs at the same time on another thread
+ * still writes the cell every later read sees.
+ */
 public final class DataWH {
-    public static HashMap<String,String> closure = new HashMap<String,String>();
-    private DataWH() { }
-    public static HashMap<String,TypeVal> dataVal = new HashMap<String,TypeVal>();
-}
+    // concurrent maps, since advice on any thread of the monitored program may update bindings
+    public static ConcurrentHashMap<String,String> closure = new ConcurrentHashMap<String,String>();
 
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
 
-class TypeVal {
-    public String type;
-    public Object obj;
+    private static final ConcurrentHashMap<String, Integer> slotIndex = new ConcurrentHashMap<>();
+    private static volatile Chunk[] chunks = new Chunk[0];
+    /* number of slots reserved so far, guarded by the class lock */
+    private static int numSlots = 0;
 
-    TypeVal() {
-        this.type = "java.lang.String";
-        this.obj = null;
+    private DataWH() { }
+
+    /**
+     * Reserves one slot per variable. Called from a generated aspect's static initializer, before any of its
+     * advice runs.
+     *
+     * @param names variable names, qualified with their policy name
+     * @param types declared type of each variable
+     * @return index of the first reserved slot; variable i is in slot base + i
+     */
+    public static synchronized int reserveSlots(String[] names, String[] types) {
+        int base = numSlots;
+        int needed = (base + names.length + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (needed > current.length) {
+            Chunk[] grown = Arrays.copyOf(current, needed);
+            for (int i = current.length; i < needed; i++) {
+                grown[i] = new Chunk();
+            }
+            chunks = grown;
+        }
+        for (int i = 0; i < names.length; i++) {
+            int slot = base + i;
+            chunks[slot >>> CHUNK_BITS].types[slot & (CHUNK_SIZE - 1)] = types[i];
+            slotIndex.put(names[i], slot);
+        }
+        numSlots = base + names.length;
+        return base;
+    }
+
+    public static void bind(int slot, Object value) {
+        chunks[slot >>> CHUNK_BITS].values.set(slot & (CHUNK_SIZE - 1), value);
     }
 
-    TypeVal(String type) {
-        this.type = type;
-        this.obj = null;
+    public static Object getValue(int slot) {
+        return chunks[slot >>> CHUNK_BITS].values.get(slot & (CHUNK_SIZE - 1));
     }
 
-    TypeVal(String type, Object obj) {
-        this.type = type;
-        this.obj = obj;
+    public static String getType(int slot) {
+        return chunks[slot >>> CHUNK_BITS].types[slot & (CHUNK_SIZE - 1)];
     }
 
-    public String getType() {
-        return type;
+    /**
+     * @return slot of the variable, or -1 if no aspect declared it
+     */
+    public static int slotOf(String name) {
+        Integer slot = slotIndex.get(name);
+        return (slot == null) ? -1 : slot;
     }
 
-    public void setType(String type) {
-        this.type = type;
+    /**
+     * @return value bound to the variable, or null if it is unbound or undeclared
+     */
+    public static Object getValue(String name) {
+        int slot = slotOf(name);
+        return (slot == -1) ? null : getValue(slot);
     }
 
-    public Object getObj() {
-        return obj;
+    /**
+     * @return declared type of the variable, or null if it is undeclared
+     */
+    public static String getType(String name) {
+        int slot = slotOf(name);
+        return (slot == -1) ? null : getType(slot);
     }
 
-    public void setObj(Object obj) {
-        this.obj = obj;
+    /**
+     * CHUNK_SIZE consecutive slots.
+     */
+    private static final class Chunk {
+        final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final String[] types = new String[CHUNK_SIZE];
     }
-}
\ No newline at end of file
+}
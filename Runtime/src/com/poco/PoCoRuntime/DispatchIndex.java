@@ -0,0 +1,116 @@
+package com.poco.PoCoRuntime;
+
+import java.util.ArrayList;
+
+/**
+ * Index from an event's signature to the Exchange leaves of a policy that could accept it. Built once when the
+ * policy's root execution is set.
+ *
+ * The first time a signature is seen, every leaf's matcher is evaluated as far as it can be from the signature alone
+ * (action matches without bound variables, and the Matchs trees built from them). The verdict for each leaf is then
+ * cached, so later events with that signature settle those leaves with one array lookup instead of running regexes.
+ * Leaves whose outcome depends on bindings, results or SRE operations are marked UNKNOWN and always evaluated. Only
+ * the SIGNATURE_CACHE_SIZE most recently seen signatures are kept.
+ */
+public class DispatchIndex {
+    /** number of signatures whose verdicts are cached */
+    public static final int SIGNATURE_CACHE_SIZE = 1024;
+
+    enum Verdict { UNKNOWN, ACCEPTS, REJECTS }
+
+    private final ArrayList<Exchange> leaves = new ArrayList<>();
+    private final LruCache<String, Verdict[]> verdicts = new LruCache<>(SIGNATURE_CACHE_SIZE);
+
+    public DispatchIndex(AbstractExecution rootExecution) {
+        collectLeaves(rootExecution);
+        for (int i = 0; i < leaves.size(); i++) {
+            leaves.get(i).setDispatchIndex(this, i);
+        }
+    }
+
+    private void collectLeaves(EventResponder responder) {
+        if (responder instanceof Exchange) {
+            leaves.add((Exchange) responder);
+        } else if (responder instanceof AbstractExecution) {
+            for (EventResponder child : ((AbstractExecution) responder).getChildren()) {
+                collectLeaves(child);
+            }
+        }
+    }
+
+    public int getNumLeaves() {
+        return leaves.size();
+    }
+
+    /**
+     * @return number of signatures whose verdicts are cached
+     */
+    public int getNumCachedSignatures() {
+        return verdicts.size();
+    }
+
+    /**
+     * @param event PoCo event
+     * @param leaf  index of the Exchange leaf
+     * @return ACCEPTS or REJECTS if the leaf's decision follows from the event signature alone, otherwise UNKNOWN
+     */
+    Verdict verdict(Event event, int leaf) {
+        Verdict[] forSignature = verdicts.get(event.getSignature());
+        if (forSignature == null) {
+            forSignature = new Verdict[leaves.size()];
+            for (int i = 0; i < forSignature.length; i++) {
+                forSignature[i] = staticVerdict(leaves.get(i).getMatcher(), event);
+            }
+            verdicts.put(event.getSignature(), forSignature);
+        }
+        return forSignature[leaf];
+    }
+
+    private static Verdict staticVerdict(Matchable matcher, Event event) {
+        if (matcher == null) { //_ case
+            return Verdict.ACCEPTS;
+        }
+        if (matcher instanceof OtherMatch) {
+            return Verdict.UNKNOWN;
+        }
+        if (matcher instanceof Match) {
+            Match match = (Match) matcher;
+            if (!match.isSignatureOnly()) {
+                return Verdict.UNKNOWN;
+            }
+            return match.accepts(event) ? Verdict.ACCEPTS : Verdict.REJECTS;
+        }
+        if (matcher instanceof Matchs) {
+            return staticVerdict((Matchs) matcher, event);
+        }
+        return Verdict.UNKNOWN;
+    }
+
+    private static Verdict staticVerdict(Matchs matchs, Event event) {
+        ArrayList<Matchable> children = matchs.getChildren();
+        if (children.size() == 0) {
+            return Verdict.REJECTS;
+        }
+        if (matchs.isOR() || matchs.isAND()) {
+            // OR is decided by any ACCEPTS, AND by any REJECTS
+            Verdict decisive = matchs.isOR() ? Verdict.ACCEPTS : Verdict.REJECTS;
+            boolean allKnown = true;
+            for (Matchable child : children) {
+                Verdict childVerdict = staticVerdict(child, event);
+                if (childVerdict == decisive) {
+                    return decisive;
+                }
+                allKnown = allKnown && childVerdict != Verdict.UNKNOWN;
+            }
+            if (!allKnown) {
+                return Verdict.UNKNOWN;
+            }
+            return matchs.isOR() ? Verdict.REJECTS : Verdict.ACCEPTS;
+        }
+        Verdict first = staticVerdict(children.get(0), event);
+        if (matchs.isNOT() && first != Verdict.UNKNOWN) {
+            return (first == Verdict.ACCEPTS) ? Verdict.REJECTS : Verdict.ACCEPTS;
+        }
+        return first;
+    }
+}
@@ -1,8 +1,7 @@
 package com.poco.PoCoRuntime;
 
 import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Root policy that defers all decisions to its single child Polipocy. Created
@@ -10,20 +9,120 @@ import java.util.regex.Pattern;
  * parse/codegen tree-defining policies.
  */
 public class DummyRootPolicy {
-	private Stack<String> monitoringEvents;
+	/**
+	 * How policy state is shared between the threads of a monitored program.
+	 * <ul>
+	 * <li>SHARED: one policy and one monitoring stack, no synchronization.
+	 * Only safe for single-threaded programs (the original behavior).</li>
+	 * <li>PER_THREAD: every thread gets its own policy instance (and so its
+	 * own execution cursors) and its own monitoring stacks.</li>
+	 * <li>GLOBAL: one policy whose queries are serialized by a lock, since its
+	 * execution cursors form a single state machine. Monitoring stacks are
+	 * kept per thread, and the rest of the decision runs outside the lock.</li>
+	 * </ul>
+	 */
+	public enum ConcurrencyMode {
+		SHARED, PER_THREAD, GLOBAL
+	}
+
+	/** Stacks pairing a thread's monitored and promoted actions. */
+	private static class MonitorState {
+		final Stack<Event> monitoringEvents = new Stack<>();
+		final Stack<String> promotedEvents = new Stack<>();
+	}
+
+	/** signature of the result events of promoted actions */
+	private static final String PROMOTION_SIGNATURE = "Object java.lang.reflect.Method.invoke(Object, Object[])";
+
+	private final ConcurrencyMode mode;
 	private Policy child;
-	public Stack<String> promotedEvents;
+	private PolicyFactory childFactory;
+	private final ThreadLocal<Policy> threadChild;
+	private final ReentrantLock queryLock = new ReentrantLock();
+	private final MonitorState sharedState;
+	private final ThreadLocal<MonitorState> threadState;
 
 	public DummyRootPolicy(Policy child) {
+		this.mode = ConcurrencyMode.SHARED;
 		this.child = child;
-		this.monitoringEvents = new Stack<>();
-		this.promotedEvents = new Stack<>();
+		this.sharedState = new MonitorState();
+		this.threadState = null;
+		this.threadChild = null;
+	}
+
+	/**
+	 * Creates a root policy for a multi-threaded program.
+	 * 
+	 * @param childFactory
+	 *            creates the child policy; called once per thread in
+	 *            PER_THREAD mode and once overall otherwise
+	 * @param mode
+	 *            how policy state is shared between threads
+	 */
+	public DummyRootPolicy(PolicyFactory childFactory, ConcurrencyMode mode) {
+		this.mode = mode;
+		this.childFactory = childFactory;
+		if (mode == ConcurrencyMode.PER_THREAD) {
+			this.threadChild = new ThreadLocal<Policy>() {
+				@Override
+				protected Policy initialValue() {
+					return DummyRootPolicy.this.childFactory.newPolicy();
+				}
+			};
+		} else {
+			this.threadChild = null;
+			this.child = childFactory.newPolicy();
+		}
+		if (mode == ConcurrencyMode.SHARED) {
+			this.sharedState = new MonitorState();
+			this.threadState = null;
+		} else {
+			this.sharedState = null;
+			this.threadState = new ThreadLocal<MonitorState>() {
+				@Override
+				protected MonitorState initialValue() {
+					return new MonitorState();
+				}
+			};
+		}
 	}
 	
 	public void setChild(Policy child) {
 		this.child = child;
 	}
 
+	public ConcurrencyMode getConcurrencyMode() {
+		return mode;
+	}
+
+	private MonitorState state() {
+		return (threadState == null) ? sharedState : threadState.get();
+	}
+
+	/**
+	 * @return stack of methods promoted by the calling thread that have not
+	 *         returned yet (shared by all threads in SHARED mode)
+	 */
+	public Stack<String> getPromotedEvents() {
+		return state().promotedEvents;
+	}
+
+	private SRE queryChild(Event event) {
+		switch (mode) {
+		case PER_THREAD:
+			return threadChild.get().query(event);
+		case GLOBAL:
+			queryLock.lock();
+			try {
+				return child.query(event);
+			} finally {
+				queryLock.unlock();
+			}
+		default:
+			return child.query(event);
+		}
+	}
+
 	/**
 	 * AspectJ calls this method on any attempted action.
 	 * 
@@ -32,299 +131,123 @@ public class DummyRootPolicy {
 	 * @throws Exception
 	 */
 	public void queryAction(Event event) {
+		MonitorState state = state();
+		Stack<Event> monitoringEvents = state.monitoringEvents;
 		if (event.getEventType() == null || event.getEventType() != "Result") {
-			monitoringEvents.push(event.getSignature());
+			monitoringEvents.push(event);
 		}
-		SRE result = child.query(event);
+		SRE result = queryChild(event);
 		// when accept is false, the returned SRE value is NULL
 		if (result == null) {
 			System.out.println("--Null");
 			System.exit(-1);
 			// return;
 		}
-		boolean posMatch = false;
-		boolean negMatch = false;
-
-		//System.out.format("Root policy queried with event: \"%s\"\n", event.getSignature());
-		if (result.getPositiveRE() != null
-				&& (result.getPositiveRE().trim().length() !=0 && !result.getPositiveRE().equals("null"))) {
-			posMatch = true;
-			//System.out.format("Child policy returned +`%s'\n", result.positiveRE());
-		}
-		if (result.getNegativeRE() != null) {
-			if (!posMatch)
-				negMatch = true;
-			//System.out.format("Child policy returned -`%s'\n", result.negativeRE());
-		}
-		// Neutral case which means should be okay if
-		if (result.getPositiveRE() == null && result.getNegativeRE() == null) {
-			// System.out.println("Child policy returned Neutral");
-		}
-		if (posMatch) {
-			// $$AddBCC$$(#javax.mail.Message{$$msg$$},#java.lang.String{domain})
-			// com.poco.RuntimeDemo.ShowDialog(#java.lang.String{$$Attachments_message})
-			String resultPos = result.positiveRE();
-
-			String  funReg = "(.+)\\((.*)\\)";
-			Pattern funPtn = Pattern.compile(funReg);
-			Matcher funMth = funPtn.matcher(resultPos);
-
-			String  objReg = "#(.+)\\{(.+)\\}";
-			Pattern objPtn = Pattern.compile(objReg);
-			Matcher objMth = objPtn.matcher(resultPos);
-			//not a function call but an object value, then it is the case of update the return value
-			if (!funMth.find() && objMth.find()) {
-				event.setResult(genNewResult(objMth.group(1).trim(), objMth
-						.group(2).trim()));
-				return;
-			}
-			String reg = "(.*)(\\$\\$(.+)\\$\\$)(.*)";
-			Pattern pattern = Pattern.compile(reg);
-			Matcher matcher;
-
-			// first find the number of the arguments
-			int numOfArgs = 0;
-			String[] paramStrs = null;
-			Object[] obj4Args = null;
-
-			int lParen = resultPos.indexOf('(');
-			int rParen = resultPos.indexOf(')');
-			// get the parameter part of the string
-			if (lParen != -1 && rParen != -1 && rParen > lParen) {
-				if (resultPos.substring(lParen + 1, rParen).length() > 0)
-					paramStrs = resultPos.substring(lParen + 1, rParen).split(
-							",");
-			}
-			if (paramStrs != null && paramStrs.length > 0) {
-				obj4Args = new Object[paramStrs.length];
-				// arg: #javax.mail.Message{$$msg}; arg:
-				// #java.lang.String{domain}
-				for (int i = 0; i < paramStrs.length; i++) {
-					String value = paramStrs[i];
-					int leftIndex = value.indexOf('{');
-					int rightIndex = value.indexOf('}');
-					if (leftIndex != -1 && rightIndex != -1
-							&& rightIndex > leftIndex)
-						value = value.substring(leftIndex + 1, rightIndex);
-					if (value != null && value.length() > 0) {
-						matcher = pattern.matcher(value);
-						if (matcher.find()) {// it is variable (e.g., $$msg)
-							if (DataWH.dataVal.get(matcher.group(3).trim())
-									.getType().equals("java.lang.String")) {
-								String str = DataWH.dataVal
-										.get(matcher.group(3).trim()).getObj()
-										.toString();
-								matcher = pattern.matcher(str);
-								while (matcher.find()) {
-									String id = matcher.group(3).trim();
-									String val = DataWH.closure.get(id);
-									if (val != null) {
-										str = str
-												.replace(matcher.group(2), val);
-										matcher = pattern.matcher(str);
-									} else
-										break;
-								}
-								obj4Args[i] = new String(str);
-							} else
-								obj4Args[i] = DataWH.dataVal.get(
-										matcher.group(3).trim()).getObj();
-						} else {
-							String regex = "#(.+)\\{(.+)\\}";
-							Pattern patternType = Pattern.compile(regex);
-							Matcher matcherType = patternType
-									.matcher(paramStrs[i]);
-							if (matcherType.find()) {
-								// need add more cases
-								switch (matcherType.group(1).trim()) {
-									case "String":
-									case "java.lang.String":
-										obj4Args[i] = new String(value);
-										break;
-									case "int":
-									case "Integer":
-										obj4Args[i] = new Integer(value);
-										break;
-									default:
-										obj4Args[i] = new String(value);
-										break;
-								}
-							}
-						}
-					}
-				}
-			}
-			matcher = pattern.matcher(resultPos);
-			boolean needUpdate = matcher.find();
-			while (needUpdate) {
-				// need delete (, otherwise cause issues.
-				String replaceStr = DataWH.closure.get(matcher.group(3).trim());
-				if (resultPos.indexOf('(') != -1 && replaceStr.indexOf('(') != -1)
-					replaceStr = replaceStr.substring(0,
-							replaceStr.indexOf('('));
-				resultPos = resultPos.replace(matcher.group(2).trim(),
-						replaceStr);
-				matcher = pattern.matcher(resultPos);
-				needUpdate = matcher.find();
-			}
-			boolean promoted = false;
-			// have to manipulate the string for new case, since signature will
-			// not include new keyword
-			if (resultPos.indexOf('(') != -1) {
-				String funName = resultPos.substring(0,resultPos.indexOf('('));
-				String argPrt = resultPos.substring(resultPos.indexOf('('),resultPos.length());
-				if(funName.substring(funName.length() - 4, funName.length())
-						.equals(".new"))
-					resultPos = funName.substring(0, funName.length() - 4) + argPrt;
-			}
-
-			if (monitoringEvents.isEmpty() && resultPos != null)
-				promoted = false;
-			else {
-				if (methodMatch(monitoringEvents.peek(), resultPos))
-					promoted = true;
-				else {
-					//this case is that when dealing with catch all the subclasses
-					//e.g., monitoringEvents: com.poco.AClassLoader()
-					//      resultPos: java.lang.ClassLoader+()
-					String sigFunName =resultPos;
-					String monFunName =  monitoringEvents.peek();
-					if(sigFunName.indexOf('(') != -1)
-						sigFunName = sigFunName.substring(0,sigFunName.indexOf('('));
-					if(monFunName.indexOf('(') != -1)
-						monFunName = monFunName.substring(0,monFunName.indexOf('('));
-					if(sigFunName.endsWith("+")) {
-						try {
-							//e.g., com.poco.AClassLoader
-							Class cls1 = Class.forName(monFunName);
-							//e.g., java.lang.ClassLoader+
-							Class cls2 = Class.forName(sigFunName.substring(0,sigFunName.length()-1));
-							if(cls2.isAssignableFrom(cls1))
-								promoted = true;
-							else
-								promoted = false;
-						} catch (ClassNotFoundException e) {
-							e.printStackTrace();
-						}
-					}
-				}
-			}
-			if (promoted) {
-				System.out.println("the action " + monitoringEvents.peek()
-						+ " will be allowed!"); 
-				monitoringEvents.pop();
-			} else {
-				try {
-					String methodname = resultPos;
-					int index = resultPos.indexOf('(');
-					if (index > -1)
-						methodname = resultPos.substring(0, index);
-					promotedEvents.push(methodname.trim());
-					Promoter.Reflect(resultPos, obj4Args);
-				} catch (Exception ex) {
-					ex.printStackTrace();
-				}
-			}
-		}
-		
-		if (negMatch) {
+		ActionPlan plan = result.actionPlan();
+		switch (plan.kind) {
+		case ActionPlan.REPLACE_RESULT:
+			event.setResult(plan.newResult());
+			return;
+		case ActionPlan.PROMOTE:
+			promote(plan, state);
+			return;
+		case ActionPlan.DENY:
 			// if already on stack, show System.exit(-1);
 			if (!monitoringEvents.empty()
-					&& monitoringEvents.peek().contains(
-							result.negativeRE().toString())) {
+					&& monitoringEvents.peek().getSignature()
+							.contains(plan.negativeRE)) {
 				monitoringEvents.pop();
 			}
-		}
-		if (posMatch)
-			return;
-		if (negMatch)
 			System.exit(-1);
+			return;
+		default:
+			// Neutral case which means should be okay
+			return;
+		}
 	}
 
-	private Object genNewResult(String type, String value) {
-		Object retObj = null;
-		String  reg = "\\$\\$(.*)\\$\\$";
-		Pattern ptn = Pattern.compile(reg);
-		Matcher mth = ptn.matcher(value);
-		if(!mth.find()) {
-			switch (type) {
-			case "int":
-			case "Integer":
-				retObj = new Integer(value);
-				break;
-			case "long":
-				retObj = new Long(value);
-				break;
-			case "double":
-				retObj = new Double(value);
-				break;
-			case "float":
-				retObj = new Float(value);
-				break;
-			case "boolean":
-				retObj = new Boolean(value);
-				break;
-			case "char":
-				retObj = new Character(value.charAt(0));
-				break;
-			default:
-				retObj = new String(value);
+	/**
+	 * Allows the monitored action if it is the action the policy returned,
+	 * otherwise invokes the returned action in its place.
+	 */
+	private void promote(ActionPlan plan, MonitorState state) {
+		Stack<Event> monitoringEvents = state.monitoringEvents;
+		String resultPos = plan.promotion;
+		boolean promoted = false;
+		if (!monitoringEvents.isEmpty()) {
+			Event peek = monitoringEvents.peek();
+			if (methodMatch(peek, plan.promotionSig))
+				promoted = true;
+			else if (plan.subtypeBase != null) {
+				//this case is that when dealing with catch all the subclasses
+				//e.g., monitoringEvents: com.poco.AClassLoader()
+				//      resultPos: java.lang.ClassLoader+()
+				//e.g., com.poco.AClassLoader against java.lang.ClassLoader+
+				promoted = Boolean.TRUE.equals(SubtypeCache.isSubtype(peek.getQualifiedName(), plan.subtypeBase,
+						peek.getDeclaringClass()));
 			}
 		}
-		else { //if the value is from the dataHW used and saved early
-			retObj = DataWH.dataVal.get(mth.group(1).trim()).getObj();
+		if (promoted) {
+			System.out.println("the action " + monitoringEvents.peek().getSignature()
+					+ " will be allowed!");
+			monitoringEvents.pop();
+		} else if (plan.compiledTarget != null) {
+			try {
+				Object ret = plan.compiledTarget.invoker.invoke(plan.promotionArgs());
+				queryPromotionResult(plan.compiledTarget.methodName, ret);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} else {
+			try {
+				state.promotedEvents.push(plan.promotedMethod);
+				Object ret = Promoter.Reflect(resultPos, plan.promotionArgs());
+				// The aspect's Method.invoke advice reports the result of
+				// promotions made through reflection and pops the stack. The
+				// Promoter invokes through method handles, so report it here
+				// when nothing else did.
+				if (!state.promotedEvents.empty()
+						&& state.promotedEvents.peek() == plan.promotedMethod) {
+					state.promotedEvents.pop();
+					queryPromotionResult(Promoter.resolvedMethodName(resultPos), ret);
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
 		}
-		return retObj;
+	}
+
+	/**
+	 * Queries the policy with the result of a promoted action, as the
+	 * aspect's advice on Method.invoke does for reflective promotions.
+	 *
+	 * @param methodName
+	 *            declaring class and name of the promoted method
+	 */
+	private void queryPromotionResult(String methodName, Object ret) {
+		if (methodName == null)
+			return;
+		Event event = new Event("Result", PROMOTION_SIGNATURE);
+		event.setPromotedMethod(methodName);
+		event.setResult(ret);
+		queryAction(event);
 	}
 
 	/**
 	 * This method used to matching the monitored method name to the resultPos
 	 * the issue is that the event.signature only record the partial of the
 	 * parameter typ (e.g., Message instead of javax.mail.Message), so need
-	 * compare method name then parameter types one by one
+	 * compare method name then the number of parameters
 	 * 
 	 * @param peek
-	 * @param resultPos
+	 * @param resultSig
 	 * @return
 	 */
-	private boolean methodMatch(String peek, String resultPos) {
-		String reg = "(.+)\\((.*)\\)";
-		String peekMethodName = peek;
-		String resultMethodName = resultPos;
-		String[] peekParams = null;
-		String[] resultParams = null;
-
-		Pattern pattern = Pattern.compile(reg);
-		Matcher matcher1 = pattern.matcher(peek);
-		Matcher matcher2 = pattern.matcher(resultPos);
-		if (matcher1.find()) {
-			peekMethodName = matcher1.group(1).trim();
-			if (peekMethodName.split(" ").length == 2)
-				peekMethodName = peekMethodName.split(" ")[1];
-			String strParams = matcher1.group(2).trim();
-			if (strParams.length() == 0)
-				peekParams = null;
-			else
-				peekParams = strParams.split(",");
-		}
-		if (matcher2.find()) {
-			resultMethodName = matcher2.group(1).trim();
-			if (resultMethodName.split(" ").length == 2)
-				resultMethodName = resultMethodName.split(" ")[1];
-			String strParams = matcher2.group(2).trim();
-			if (strParams.length() == 0)
-				resultParams = null;
-			else
-				resultParams = strParams.split(",");
-		}
-		if (peekMethodName.equals(resultMethodName)) {
-			if (resultParams == null) {
+	private boolean methodMatch(Event peek, EventSignature resultSig) {
+		if (peek.getQualifiedName().equals(resultSig.getQualifiedName())) {
+			if (resultSig.getArity() == 0 || resultSig.getArity() == peek.getArity())
 				return true;
-			} else {
-				if (resultParams.length == peekParams.length)
-					return true;
-			}
 		}
 		return false;
 	}
-}
\ No newline at end of file
+}
@@ -1,6 +1,9 @@
 package com.poco.PoCoRuntime;
 
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.reflect.SourceLocation;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents an action/result intercepted by AspectJ for use by PoCo policies.
@@ -8,7 +11,21 @@ import org.aspectj.lang.JoinPoint;
  * information for PoCo policies to make a decision.
  */
 public class Event {
+    /* one parsed signature per join point shadow, kept with the class containing the shadow so that it can still
+       be unloaded */
+    private static final ClassValue<ConcurrentHashMap<JoinPoint.StaticPart, EventSignature>> signatureCache =
+            new ClassValue<ConcurrentHashMap<JoinPoint.StaticPart, EventSignature>>() {
+                @Override
+                protected ConcurrentHashMap<JoinPoint.StaticPart, EventSignature> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
     private String signature;
+    /* signature split into its parts, parsed once when the event is created */
+    private EventSignature parsedSignature;
+    /* class declaring the intercepted method, null for events built from strings */
+    private Class<?> declaringClass = null;
     private String eventType;
     private String promotedMethod;
     
@@ -46,21 +63,100 @@ public class Event {
     public Event(String eventType, String signature) {
         this.eventType = eventType;
         this.signature = signature;
+        this.parsedSignature = EventSignature.parse(signature);
     }
 
     public Event(String eventType) {
         this.eventType = eventType;
         this.signature = "";
+        this.parsedSignature = EventSignature.parse(signature);
     }
 
     public Event(JoinPoint joinPoint) {
-        this.signature = joinPoint.getSignature().toString();
+        this(joinPoint.getStaticPart());
+    }
+
+    private Event(JoinPoint.StaticPart staticPart) {
+        this.parsedSignature = internSignature(staticPart);
+        this.signature = parsedSignature.getSignature();
+        Class<?> type = staticPart.getSignature().getDeclaringType();
+        // AspectJ stands in ClassNotFoundException for a declaring type it cannot load
+        this.declaringClass = (type == ClassNotFoundException.class) ? null : type;
+    }
+
+    /**
+     * Creates an event from the static part of a join point (thisJoinPointStaticPart in advice). Unlike
+     * thisJoinPoint, the static part is not allocated per call, and its signature is only parsed the first
+     * time the join point is reached. Result events still set their result explicitly.
+     *
+     * @param staticPart static part of the intercepted join point
+     * @return new event for the join point
+     */
+    public static Event forStaticPart(JoinPoint.StaticPart staticPart) {
+        return new Event(staticPart);
+    }
+
+    private static EventSignature internSignature(JoinPoint.StaticPart staticPart) {
+        SourceLocation location = staticPart.getSourceLocation();
+        Class<?> withinType = (location == null) ? null : location.getWithinType();
+        if (withinType == null)
+            return EventSignature.fromSignature(staticPart.getSignature());
+        ConcurrentHashMap<JoinPoint.StaticPart, EventSignature> signatures = signatureCache.get(withinType);
+        EventSignature parsed = signatures.get(staticPart);
+        if (parsed == null) {
+            parsed = EventSignature.fromSignature(staticPart.getSignature());
+            EventSignature existing = signatures.putIfAbsent(staticPart, parsed);
+            if (existing != null)
+                parsed = existing;
+        }
+        return parsed;
     }
 
     public String getSignature() {
         return signature;
     }
 
+    public EventSignature getParsedSignature() {
+        return parsedSignature;
+    }
+
+    /**
+     * @return return type of the intercepted method, or "*" if the signature has none (e.g. constructors)
+     */
+    public String getReturnType() {
+        return parsedSignature.getReturnType();
+    }
+
+    /**
+     * @return "declaringType.methodName" for methods, or the declaring type for constructors
+     */
+    public String getQualifiedName() {
+        return parsedSignature.getQualifiedName();
+    }
+
+    public String getDeclaringType() {
+        return parsedSignature.getDeclaringType();
+    }
+
+    /**
+     * @return class declaring the intercepted method, or null if the event was not created from a join point
+     */
+    public Class<?> getDeclaringClass() {
+        return declaringClass;
+    }
+
+    public String getMethodName() {
+        return parsedSignature.getMethodName();
+    }
+
+    public String[] getParameterTypes() {
+        return parsedSignature.getParameterTypes();
+    }
+
+    public int getArity() {
+        return parsedSignature.getArity();
+    }
+
 	@Override
 	public String toString() {
 		return "Event [signature=" + signature + ", eventType=" + eventType
@@ -0,0 +1,123 @@
+package com.poco.PoCoRuntime;
+
+import org.aspectj.lang.Signature;
+
+/**
+ * Signature of an intercepted method or constructor, split into its parts once so that matching code does not have
+ * to re-split the signature string on every event. Instances are immutable.
+ *
+ * For a method the qualified name is "declaringType.methodName"; for a constructor it is just the declaring type
+ * (the same form AspectJ uses when printing the signature). The return type is "*" when the signature has none.
+ */
+public final class EventSignature {
+    private static final String[] NO_PARAMS = new String[0];
+
+    private final String signature;
+    private final String returnType;
+    private final String qualifiedName;
+    private final String declaringType;
+    private final String methodName;
+    private final String[] parameterTypes;
+    private final boolean isConstructor;
+
+    private EventSignature(String signature, String returnType, String qualifiedName, String declaringType,
+                           String methodName, String[] parameterTypes, boolean isConstructor) {
+        this.signature = signature;
+        this.returnType = returnType;
+        this.qualifiedName = qualifiedName;
+        this.declaringType = declaringType;
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes;
+        this.isConstructor = isConstructor;
+    }
+
+    /**
+     * Builds the signature from an AspectJ join point signature. Its parts are taken from the signature as AspectJ
+     * prints it (short return and parameter type names, e.g. "String com.poco.Foo.bar(int)"), since that is the form
+     * PoCo match strings are written against. Event parses each join point's signature only once.
+     *
+     * @param sig signature of the join point
+     * @return parsed signature
+     */
+    public static EventSignature fromSignature(Signature sig) {
+        return parse(sig.toString());
+    }
+
+    /**
+     * Parses a signature string such as "void com.poco.Foo.bar(String, int)" or "java.io.File(String)". A string
+     * with an argument list but no return type is taken to be a constructor.
+     *
+     * @param signature signature string
+     * @return parsed signature
+     */
+    public static EventSignature parse(String signature) {
+        String sig = (signature == null) ? "" : signature;
+        int lParen = sig.indexOf('(');
+        int rParen = sig.lastIndexOf(')');
+
+        String head = (lParen == -1) ? sig.trim() : sig.substring(0, lParen).trim();
+        int space = head.lastIndexOf(' ');
+        String returnType = (space == -1) ? "*" : head.substring(0, space).trim();
+        String qualifiedName = head.substring(space + 1);
+
+        String[] params = NO_PARAMS;
+        if (lParen != -1 && rParen > lParen) {
+            String paramStr = sig.substring(lParen + 1, rParen).trim();
+            if (paramStr.length() > 0) {
+                params = paramStr.split(",");
+                for (int i = 0; i < params.length; i++) {
+                    params[i] = params[i].trim();
+                }
+            }
+        }
+
+        boolean isConstructor = (space == -1 && lParen != -1);
+        if (isConstructor) {
+            return new EventSignature(sig, returnType, qualifiedName, qualifiedName, "new", params, true);
+        }
+        int dot = qualifiedName.lastIndexOf('.');
+        String declaringType = (dot == -1) ? "" : qualifiedName.substring(0, dot);
+        String methodName = qualifiedName.substring(dot + 1);
+        return new EventSignature(sig, returnType, qualifiedName, declaringType, methodName, params, false);
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public String getReturnType() {
+        return returnType;
+    }
+
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    public String getDeclaringType() {
+        return declaringType;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * @return parameter types of the signature; callers must not modify the array
+     */
+    public String[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public int getArity() {
+        return parameterTypes.length;
+    }
+
+    public boolean isConstructor() {
+        return isConstructor;
+    }
+
+    @Override
+    public String toString() {
+        return signature;
+    }
+}
@@ -6,6 +6,9 @@ package com.poco.PoCoRuntime;
 public class Exchange extends EventResponder implements Matchable, Queryable {
     private Matchable matcher;
     private SRE returnSRE;
+    /* index of the owning policy, used to settle signature-only matches without running the matcher */
+    private DispatchIndex dispatchIndex = null;
+    private int leafIndex;
 
     public Exchange() {
         // Initialize...
@@ -15,14 +18,32 @@ public class Exchange extends EventResponder implements Matchable, Queryable {
         this.matcher = matcher;
     }
 
+    public Matchable getMatcher() {
+        return matcher;
+    }
+
     public void setSRE(SRE sre) {
         this.returnSRE = sre;
     }
 
+    SRE getReturnSRE() {
+        return returnSRE;
+    }
+
+    void setDispatchIndex(DispatchIndex dispatchIndex, int leafIndex) {
+        this.dispatchIndex = dispatchIndex;
+        this.leafIndex = leafIndex;
+    }
+
     @Override
     public boolean accepts(Event event) {
         if(matcher == null) //_ case
             return true;
+        if (dispatchIndex != null) {
+            DispatchIndex.Verdict verdict = dispatchIndex.verdict(event, leafIndex);
+            if (verdict != DispatchIndex.Verdict.UNKNOWN)
+                return verdict == DispatchIndex.Verdict.ACCEPTS;
+        }
         return matcher.accepts(event);
     }
 
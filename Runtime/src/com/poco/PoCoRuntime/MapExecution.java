@@ -11,6 +11,8 @@ public class MapExecution extends SequentialExecution implements Queryable,
 		Matchable {
 	private String operator;
 	private SRE matchSre = null;
+	private static final Pattern VAR_PATTERN = Pattern
+			.compile("(.*)(\\$\\$(.+)\\$\\$)(.*)");
 
 	public MapExecution(String modifier, String operator, SRE matchSre)
 			throws PoCoException {
@@ -31,18 +33,13 @@ public class MapExecution extends SequentialExecution implements Queryable,
 		super(modifier);
 	}
 
-	// use to set the current modifier for the first child before start query,
-	// and later update modifier while advance cursor
-	public boolean getCurrentChildModifier(String str) {
-		if (currentCursor < children.size()) {
-			if (str.equals("isZeroPlus"))
-				return ((AbstractExecution) this.children.get(currentCursor))
-						.isZeroPlus();
-			else
-				return ((AbstractExecution) this.children.get(currentCursor))
-						.isOnePlus();
-		} else
-			return false;
+	// modifier of the current child, NO_MODIFIER once the cursor is past the
+	// last child
+	private int currentChildModifier() {
+		if (currentCursor < children.size())
+			return childModifiers[currentCursor];
+		else
+			return NO_MODIFIER;
 	}
 
 	@Override
@@ -53,8 +50,8 @@ public class MapExecution extends SequentialExecution implements Queryable,
 		if (currentChild.accepts(event)) {
 			String pos = null, neg = null;
 			resultBool = true;
-			if (!getCurrentChildModifier("isZeroPlus")
-					&& !getCurrentChildModifier("isOnePlus")) {
+			int childModifier = currentChildModifier();
+			if (childModifier != ZERO_PLUS && childModifier != ONE_PLUS) {
 				advanceCursor();
 			}
 			resultSRE = currentChild.query(event);
@@ -73,7 +70,7 @@ public class MapExecution extends SequentialExecution implements Queryable,
 			resultSRE = SREUtil.performBOPs(operator, matchSre, resultSRE);
 			return resultSRE;
 		} else { // not accepting
-			if (getCurrentChildModifier("isZeroPlus")) {
+			if (currentChildModifier() == ZERO_PLUS) {
 				// We can skip a zero-plus (*) modifier
 				advanceCursor();
 				this.query(event);
@@ -94,7 +91,7 @@ public class MapExecution extends SequentialExecution implements Queryable,
 		}
 		boolean result = children.get(currentCursor).accepts(event);
 		while (!result) {
-			if (getCurrentChildModifier("isZeroPlus")) {
+			if (currentChildModifier() == ZERO_PLUS) {
 				advanceCursor();
 				result = children.get(currentCursor).accepts(event);
 			} else
@@ -125,15 +122,13 @@ public class MapExecution extends SequentialExecution implements Queryable,
 		// not include new keyword
 		if (strSre.indexOf('(') != -1) {
 			String funName = strSre.substring(0, strSre.indexOf('('));
-			String reg = "(.*)(\\$\\$(.+)\\$\\$)(.*)";
-			Pattern pattern = Pattern.compile(reg);
-			Matcher matcher = pattern.matcher(funName);
+			Matcher matcher = VAR_PATTERN.matcher(funName);
 			boolean needUpdate = matcher.find();
 			while (needUpdate) {
 				// need delete (, otherwise cause issues.
 				String replaceStr = DataWH.closure.get(matcher.group(3).trim());
 				funName = funName.replace(matcher.group(2).trim(), replaceStr);
-				matcher = pattern.matcher(funName);
+				matcher = VAR_PATTERN.matcher(funName);
 				needUpdate = matcher.find();
 			}
 			String argPrt = strSre.substring(strSre.indexOf('('),
@@ -1,4 +1,5 @@
 package com.poco.PoCoRuntime;
+import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 /**
@@ -11,6 +12,17 @@ public class Match implements Matchable {
 	private boolean isResult;
 	private String resultMatchStr; /* use to compare result */
 
+	/* finds $$var$$ references to closure values inside matchString */
+	private static final Pattern VAR_PATTERN = Pattern
+			.compile("(.*)(\\$\\$(.+)\\$\\$)(.*)");
+	/* matchString alternatives, compiled after closure substitution */
+	private Pattern[] alternatives = null;
+	private String[][] altTypNames = null;
+	/* closure variables (and their values) substituted into alternatives */
+	private String[] boundVars = null;
+	private String[] boundValues = null;
+	private Pattern resultPattern = null;
+
 	public Match() {
 		this.isAction = true;
 		this.isResult = false;
@@ -67,12 +79,24 @@ public class Match implements Matchable {
 		this.isResult = true;
 	}
 
+	/**
+	 * @return true if accepts() depends only on the event signature, i.e. this
+	 *         is an action match without closure variables
+	 */
+	boolean isSignatureOnly() {
+		if (isWildcard)
+			return true;
+		return isAction && matchString != null
+				&& !VAR_PATTERN.matcher(matchString).find();
+	}
+
 	public String getMatchString() {
 		return matchString;
 	}
 
 	public void setMatchString(String matchString) {
 		this.matchString = matchString;
+		this.alternatives = null;
 	}
 
 	public String getResultMatchStr() {
@@ -81,6 +105,7 @@ public class Match implements Matchable {
 
 	public void setResultMatchStr(String resultMatchStr) {
 		this.resultMatchStr = resultMatchStr;
+		this.resultPattern = null;
 	}
 
 	@Override
@@ -98,52 +123,28 @@ public class Match implements Matchable {
 		if (isWildcard) 	return true;
 		if (!isAction && event.getResult() == null) 	return false;
 
-		// if it is the action, just match the event signature with matchString
-		String reg = "(.*)(\\$\\$(.+)\\$\\$)(.*)";
-		Pattern pattern = Pattern.compile(reg);
-		Matcher matcher = pattern.matcher(matchString);
-
-		boolean needUpdate = matcher.find();
-		while (needUpdate) {
-			// need delete (, otherwise cause issues.
-			String replaceStr = DataWH.closure.get(matcher.group(3).trim());
-			if (replaceStr.indexOf('(') != -1)
-				replaceStr = replaceStr.substring(0, replaceStr.indexOf('('));
-			if(replaceStr.endsWith(".new"))
-				replaceStr = replaceStr.substring(0, replaceStr.length()-4);
-			matchString = matchString.replace(matcher.group(2).trim(),
-					replaceStr);
-			matcher = pattern.matcher(matchString);
-			needUpdate = matcher.find();
-		}
-		// if the matchstrings are compound re, then we need check sub-item
-		String[] matchs = matchString.split("\\|");
+		// the alternatives are compiled once and only recompiled when one of
+		// the closure values substituted into matchString has changed
+		compileAlternatives();
+		String sigRtnType = event.getReturnType();
+		String sigName = event.getQualifiedName();
 		if (isAction) {
-			for (int i = 0; i < matchs.length; i++) {
-				String[] funRtnTypName = getfunTypName(matchs[i]);
-				String[] sigRtnTypName = getfunTypName(event.getSignature());
+			for (int i = 0; i < alternatives.length; i++) {
+				String[] funRtnTypName = altTypNames[i];
 				//this case is that when dealing with catch all the subclasses
 				if(funRtnTypName[1].endsWith("+")) {
-					try {
-						//e.g., com.poco.AClassLoader
-						Class cls1 = Class.forName(sigRtnTypName[1]);
-						//e.g., java.lang.ClassLoader+
-						Class cls2 = Class.forName(funRtnTypName[1].substring(0,funRtnTypName[1].length()-1));
-						if(cls2.isAssignableFrom(cls1))
-							return true;
-						else
-							return false;
-					} catch (ClassNotFoundException e) {
-						e.printStackTrace();
-					}
+					//e.g., com.poco.AClassLoader against java.lang.ClassLoader+
+					Boolean isSubtype = SubtypeCache.isSubtype(sigName,
+							funRtnTypName[1].substring(0, funRtnTypName[1].length() - 1),
+							event.getDeclaringClass());
+					if (isSubtype != null)
+						return isSubtype;
 				}
 				if (funRtnTypName[0].equals("*")
-						|| sigRtnTypName[0].equals("*")
-						|| funRtnTypName[0].contains(sigRtnTypName[0])) {
-					pattern = Pattern.compile(matchs[i]);
-					matcher = pattern.matcher(event.getSignature());
-					boolean res = matcher.find();
-					if (!res && i < matchs.length - 1)
+						|| sigRtnType.equals("*")
+						|| funRtnTypName[0].contains(sigRtnType)) {
+					boolean res = alternatives[i].matcher(event.getSignature()).find();
+					if (!res && i < alternatives.length - 1)
 						continue;
 					return res;
 				} 
@@ -153,34 +154,29 @@ public class Match implements Matchable {
 			// result. If action not done yet, permit action first then get 
 			//action result back, compare the result with resultMatchStr
 			boolean result;
-			for (int i = 0; i < matchs.length; i++) {
-				String[] funRtnTypName = getfunTypName(matchs[i]);
-				String[] sigRtnTypName = getfunTypName(event.getSignature());
+			for (int i = 0; i < alternatives.length; i++) {
+				String[] funRtnTypName = altTypNames[i];
 				// if one of the return type is *, the return type must match.
 				// otherwise check both value
 				if (funRtnTypName[0].equals("*")
-						|| funRtnTypName[0].contains(sigRtnTypName[0])) {
-					if (funRtnTypName[1].endsWith("()"))
-						funRtnTypName[1] = funRtnTypName[1].substring(0,
-								funRtnTypName[1].length() - 2);
-					if (sigRtnTypName[1]
-							.contains("java.lang.reflect.Method.invoke")) {
+						|| funRtnTypName[0].contains(sigRtnType)) {
+					String funName = funRtnTypName[1];
+					if (funName.endsWith("()"))
+						funName = funName.substring(0, funName.length() - 2);
+					if (sigName.contains("java.lang.reflect.Method.invoke")) {
 						if (event.getPromotedMethod()
-								.contains(funRtnTypName[1])) {
-							pattern = Pattern.compile(resultMatchStr);
-							matcher = pattern.matcher(event.getResult()
-									.toString());
-							result = matcher.find();
-							if (!result && i < matchs.length - 1)
+								.contains(funName)) {
+							result = getResultPattern().matcher(event.getResult()
+									.toString()).find();
+							if (!result && i < alternatives.length - 1)
 								continue;
 							return result;
 						}
 					} else {
-						if (sigRtnTypName[1].contains(funRtnTypName[1])) {
-							pattern = Pattern.compile(resultMatchStr);
-							matcher = pattern.matcher(event.getResult().toString());
-							result = matcher.find();
-							if (!result && i < matchs.length - 1)
+						if (sigName.contains(funName)) {
+							result = getResultPattern().matcher(event.getResult()
+									.toString()).find();
+							if (!result && i < alternatives.length - 1)
 								continue;
 							return result;
 						}
@@ -191,6 +187,70 @@ public class Match implements Matchable {
 		return false;
 	}
 
+	/**
+	 * Substitutes the closure values into matchString and compiles each of its
+	 * alternatives. The compiled alternatives are reused until matchString is
+	 * replaced or one of the substituted closure values changes.
+	 */
+	private void compileAlternatives() {
+		if (alternatives != null && !bindingsChanged())
+			return;
+
+		ArrayList<String> vars = new ArrayList<>();
+		ArrayList<String> vals = new ArrayList<>();
+		String substituted = matchString;
+		Matcher matcher = VAR_PATTERN.matcher(substituted);
+		boolean needUpdate = matcher.find();
+		while (needUpdate) {
+			// need delete (, otherwise cause issues.
+			String varName = matcher.group(3).trim();
+			String closureVal = DataWH.closure.get(varName);
+			vars.add(varName);
+			vals.add(closureVal);
+			String replaceStr = closureVal;
+			if (replaceStr.indexOf('(') != -1)
+				replaceStr = replaceStr.substring(0, replaceStr.indexOf('('));
+			if(replaceStr.endsWith(".new"))
+				replaceStr = replaceStr.substring(0, replaceStr.length()-4);
+			substituted = substituted.replace(matcher.group(2).trim(),
+					replaceStr);
+			matcher = VAR_PATTERN.matcher(substituted);
+			needUpdate = matcher.find();
+		}
+
+		// if the matchstrings are compound re, then we need check sub-item
+		String[] matchs = substituted.split("\\|");
+		Pattern[] compiled = new Pattern[matchs.length];
+		String[][] typNames = new String[matchs.length][];
+		for (int i = 0; i < matchs.length; i++) {
+			compiled[i] = Pattern.compile(matchs[i]);
+			typNames[i] = getfunTypName(matchs[i]);
+		}
+		boundVars = vars.toArray(new String[vars.size()]);
+		boundValues = vals.toArray(new String[vals.size()]);
+		altTypNames = typNames;
+		alternatives = compiled;
+	}
+
+	/**
+	 * @return true if a closure value substituted into the compiled
+	 *         alternatives is no longer the current value
+	 */
+	private boolean bindingsChanged() {
+		for (int i = 0; i < boundVars.length; i++) {
+			String current = DataWH.closure.get(boundVars[i]);
+			if (current == null ? boundValues[i] != null : !current.equals(boundValues[i]))
+				return true;
+		}
+		return false;
+	}
+
+	private Pattern getResultPattern() {
+		if (resultPattern == null)
+			resultPattern = Pattern.compile(resultMatchStr);
+		return resultPattern;
+	}
+
 	public String[] getfunTypName(String funStr) {
 		String[] returnStr = new String[2];
 		String[] temp = funStr.trim().split("\\s+");
@@ -148,6 +148,10 @@ public class Matchs implements Matchable {
         return children.size();
     }
 
+    ArrayList<Matchable> getChildren() {
+        return children;
+    }
+
 	@Override
 	public String toString() {
 		return "Matchs [children=" + children + ", isAND=" + isAND + ", isOR="
@@ -6,13 +6,23 @@ package com.poco.PoCoRuntime;
  */
 public abstract class Policy extends EventResponder implements Queryable, Matchable {
     protected AbstractExecution rootExecution;
+    protected DispatchIndex dispatchIndex;
 
     public AbstractExecution getRootExecution() {
         return rootExecution;
     }
 
+    /**
+     * Sets the root execution and indexes its Exchange leaves (see DispatchIndex). The execution tree should be
+     * fully built before calling this.
+     */
     public void setRootExecution(AbstractExecution rootExecution) {
         this.rootExecution = rootExecution;
+        this.dispatchIndex = new DispatchIndex(rootExecution);
+    }
+
+    public DispatchIndex getDispatchIndex() {
+        return dispatchIndex;
     }
 
     @Override
@@ -0,0 +1,9 @@
+package com.poco.PoCoRuntime;
+
+/**
+ * Creates fresh instances of a policy. Used by DummyRootPolicy when each thread needs its own copy of the policy's
+ * execution state (see DummyRootPolicy.ConcurrencyMode.PER_THREAD).
+ */
+public interface PolicyFactory {
+    public Policy newPolicy();
+}
@@ -1,12 +1,15 @@
 package com.poco.PoCoRuntime;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,86 +18,191 @@ import java.util.regex.Pattern;
  * Created by caoyan on 1/30/15.
  */
 public class Promoter {
+    /** Maximum number of promotion targets kept resolved */
+    static final int TARGET_CACHE_SIZE = 256;
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * Resolved targets keyed by the promoted SRE string; NOT_FOUND marks strings that name no method, and a target
+     * with a failure strings whose method could not be prepared
+     */
+    private static final LruCache<String, Target> targets = new LruCache<>(TARGET_CACHE_SIZE);
+    private static final Target NOT_FOUND = new Target(null, null);
+
+    /** Invokers generated by the compiler, keyed by the promotion's SRE string as written in the policy */
+    private static final ConcurrentHashMap<String, CompiledTarget> compiledTargets = new ConcurrentHashMap<>();
+
+    /**
+     * A method to promote, as a handle of type (Object[])Object that spreads and unboxes its arguments and, for an
+     * instance method, invokes it on a fresh instance of the declaring class.
+     */
+    static final class Target {
+        final MethodHandle invoker;
+        /** declaring class and name of the method, e.g. "com.poco.Foo.bar" */
+        final String methodName;
+        /** what resolving the method threw, rethrown by every promotion instead of resolving it again */
+        final Exception failure;
+
+        Target(MethodHandle invoker, String methodName) {
+            this.invoker = invoker;
+            this.methodName = methodName;
+            this.failure = null;
+        }
+
+        Target(Exception failure) {
+            this.invoker = null;
+            this.methodName = null;
+            this.failure = failure;
+        }
+    }
+
+    /** A promotion the compiler resolved into a generated invoker */
+    static final class CompiledTarget {
+        final PromotionInvoker invoker;
+        /** declaring class and name of the method, e.g. "com.poco.Foo.bar" */
+        final String methodName;
+
+        CompiledTarget(PromotionInvoker invoker, String methodName) {
+            this.invoker = invoker;
+            this.methodName = methodName;
+        }
+    }
+
+    /**
+     * Registers a generated invoker. Called from the static initializer of the generated aspect.
+     *
+     * @param pocoString
+     *            the promotion's SRE string, e.g. $$Pol_AddBCC$$(#javax.mail.Message{$$Pol_msg$$})
+     * @param methodName
+     *            declaring class and name of the method it calls
+     * @param invoker
+     *            calls the method
+     */
+    public static void register(String pocoString, String methodName, PromotionInvoker invoker) {
+        compiledTargets.put(pocoString, new CompiledTarget(invoker, methodName));
+    }
+
+    /**
+     * @return the generated invoker for the promotion's SRE string, or null if the compiler could not resolve it
+     */
+    static CompiledTarget compiledTarget(String pocoString) {
+        return compiledTargets.get(pocoString);
+    }
+
     /**
      *
      * @param pocoString
      *            the function want to be invoked
+     * @param objects
+     *            arguments of the function, or null if it takes none
+     * @return the value the function returned
      * @throws Exception
      */
-    public static void Reflect(String pocoString, Object[] objects) throws Exception {
-        // className.funcName(#java.lang.Integer{42},#java.lang.String{402125})
+    public static Object Reflect(String pocoString, Object[] objects) throws Exception {
+        Target target = targets.get(pocoString);
+        if (target == null) {
+            try {
+                target = resolve(pocoString);
+            } catch (Exception ex) {
+                target = new Target(ex);
+            }
+            targets.put(pocoString, target);
+        }
+        if (target.failure != null)
+            throw target.failure;
+        if (target == NOT_FOUND) {
+            System.out
+                    .println("Sorry, cannot find the right method to pomote, "
+                            + "please check the policy definition!");
+            return null;
+        }
+        try {
+            return (Object) target.invoker.invokeExact(objects == null ? NO_ARGS : objects);
+        } catch (Exception ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new Exception(t);
+        }
+    }
+
+    /**
+     * Finds the method a promoted SRE string names and prepares a handle for it.
+     *
+     * @param pocoString
+     *            className.funcName(#java.lang.Integer{42},#java.lang.String{402125})
+     * @return the target, or NOT_FOUND
+     */
+    private static Target resolve(String pocoString) throws Exception {
         List<String> toExecute = Parse(pocoString);
         // class we are calling
         String className = toExecute.get(0).substring(0, toExecute.get(0).length() - 1).trim();
         // the name of function the to be invoked
         String methodName = toExecute.get(1).trim();
-        ArrayList<ReflectParameter> rps = null;
+        ArrayList<ReflectParameter> params = null;
         // if params list is not empty
-        if (toExecute.size() == 3) {
-            String[] params = toExecute.get(2).split(","); // #java.lang.Integer{42}
-            rps = ParseParameters(params);
+        if (toExecute.size() == 3 && toExecute.get(2).trim().length() > 0) {
+            params = ParseParameters(toExecute.get(2).split(",")); // #java.lang.Integer{42}
         }
-        ReflectExecute(className, methodName, rps, objects);
-    }
 
-    private static void ReflectExecute(String className, String methodName,
-                                      ArrayList<ReflectParameter> params, Object[] objs) throws Exception {
+        //get rid of the return type if the string contains it
+        if (className.trim().split(" ").length == 2)
+            className = className.trim().split(" ")[1];
+        Class cls1;
         try {
-        	boolean isfound = false;
-        	
-        	//get rid of the return type if the string contains it
-        	if(className.trim().split(" ").length == 2)
-        		className = className.trim().split(" ")[1];
-            Class cls1 = Class.forName(className);
-            Method[] methods = cls1.getMethods();
-            Method theMethod = null;
-            int paramCounts = 0;
-            if (params != null)
-                paramCounts = params.size();
-
-            for (Method method : methods) {
-                // if find the method name
-                if (method.getName().equals(methodName)) {
-                    Type[] methodParams = method.getGenericParameterTypes();
-                    if (methodParams.length == paramCounts) {
-                        isfound = true;
-                        int i = 0;
-                        for (Iterator<ReflectParameter> it = params.iterator(); it
-                                .hasNext();) {
-                            String methodParam = GetTypeName(methodParams[i]
-                                    .toString());
-                            // if the type is not the primitive type
-                            if (!methodParam.equals(it.next().GetParameterType())) {
-                                isfound = false;
-                                break;
-                            }
-                            i++;
-                        }
-                    }
-                }
-                if (isfound) {
-                    theMethod = method;
-                    break;
-                }
-            }
-            // found the right method that is we wanted
-            if (isfound) {
-                if (paramCounts > 0) { 
-                    // need check static or not
-                    if (Modifier.isStatic(theMethod.getModifiers())) {
-                        theMethod.invoke(null, objs);
-                    } else {
-                        theMethod.invoke(cls1.newInstance(), objs);
-                    }
-                }
-            } else {
-                System.out
-                        .println("Sorry, cannot find the right method to pomote, "
-                                + "please check the policy definition!");
-            }
-        } catch (Exception ex) {
+            cls1 = Class.forName(className);
+        } catch (ClassNotFoundException ex) {
             ex.printStackTrace();
+            return NOT_FOUND;
         }
+        int paramCounts = (params == null) ? 0 : params.size();
+
+        Method theMethod = null;
+        for (Method method : cls1.getMethods()) {
+            if (method.getName().equals(methodName) && parametersMatch(method, params, paramCounts)) {
+                theMethod = method;
+                break;
+            }
+        }
+        if (theMethod == null) {
+            return NOT_FOUND;
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle handle = lookup.unreflect(theMethod);
+        if (!Modifier.isStatic(theMethod.getModifiers())) {
+            // the receiver is a new instance of the class for every call
+            handle = MethodHandles.foldArguments(handle,
+                    lookup.findConstructor(cls1, MethodType.methodType(void.class)).asType(
+                            MethodType.methodType(theMethod.getDeclaringClass())));
+        }
+        handle = handle.asSpreader(Object[].class, paramCounts)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        String declaring = SREUtil.trimClassName(theMethod.getDeclaringClass().toString());
+        return new Target(handle, SREUtil.concatClsMethod(declaring, methodName));
+    }
+
+    /**
+     * @return true if the method's parameter types are exactly the types named in the policy
+     */
+    private static boolean parametersMatch(Method method, ArrayList<ReflectParameter> params, int paramCounts) {
+        Type[] methodParams = method.getGenericParameterTypes();
+        if (methodParams.length != paramCounts)
+            return false;
+        for (int i = 0; i < paramCounts; i++) {
+            // if the type is not the primitive type
+            if (!GetTypeName(methodParams[i].toString()).equals(params.get(i).GetParameterType()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return declaring class and name of the method the string resolves to, or null if it names no method or the
+     *         method could not be prepared
+     */
+    static String resolvedMethodName(String pocoString) {
+        Target target = targets.get(pocoString);
+        return (target == null) ? null : target.methodName;
     }
 
     /**
@@ -166,28 +274,28 @@ public class Promoter {
 			 */
             switch (type) {
                 case "int":
-                    obj = new Integer(val);
+                    obj = Integer.valueOf(val);
                     break;
                 case "byte":
-                    obj = new Byte(val);
+                    obj = Byte.valueOf(val);
                     break;
                 case "short":
-                    obj = new Short(val);
+                    obj = Short.valueOf(val);
                     break;
                 case "long":
-                    obj = new Long(val);
+                    obj = Long.valueOf(val);
                     break;
                 case "float":
-                    obj = new Float(val);
+                    obj = Float.valueOf(val);
                     break;
                 case "double":
-                    obj = new Double(val);
+                    obj = Double.valueOf(val);
                     break;
                 case "boolean":
-                    obj = new Boolean(val);
+                    obj = Boolean.valueOf(val);
                     break;
                 case "char":
-                    obj = new Character(val.charAt(0));
+                    obj = Character.valueOf(val.charAt(0));
                     break;
                 case "java.lang.Object":
                     obj = new String(val);
@@ -0,0 +1,14 @@
+package com.poco.PoCoRuntime;
+
+/**
+ * Calls a promoted action directly. The compiler generates one implementation per promotion it can resolve when the
+ * aspect is built, and registers it with the Promoter under the promotion's SRE string.
+ */
+public interface PromotionInvoker {
+    /**
+     * @param args arguments of the action, or null if it takes none
+     * @return the value the action returned, or null for a void action
+     * @throws Exception anything the action throws
+     */
+    public Object invoke(Object[] args) throws Exception;
+}
@@ -1,26 +1,80 @@
 package com.poco.PoCoRuntime;
 
+import dk.brics.automaton.Automaton;
+
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Signed regular expression from PoCo.
- */
-/**
- * Signed regular expression from PoCo.
+ *
+ * Each half of an SRE is kept as its policy text, as a minimized automaton, or both. SREs written in a policy carry
+ * their text and build the automaton the first time a set operation needs it; SREs produced by SREUtil operations
+ * carry only the automaton (plus the operand text when an operation returns one of its operands unchanged) and
+ * render a string only when one is asked for.
+ *
+ * Composite SREs (BopSRE, UopSRE) compute their value on first read and cache it. Every SRE carries a version
+ * stamp that changes whenever it is modified; a composite's version is the newest stamp in its tree, so replacing
+ * or modifying any operand invalidates the cached value.
  */
 public class SRE {
     // SRE Unary Operators: Complement; Actions; Results; Positive; Negative
     private String positiveRE = null;
     private String negativeRE = null;
+    private Automaton positiveAm = null;
+    private Automaton negativeAm = null;
+    // strings rendered from automata for SREs that have no policy text
+    private String positiveDisplay = null;
+    private String negativeDisplay = null;
+
+    // how the root policy acts on this SRE, built on first use
+    private volatile ActionPlan actionPlan = null;
+
+    private static final AtomicLong versions = new AtomicLong();
+    private volatile long version = versions.incrementAndGet();
 
     public void setPositiveRE(String positiveRE) {
         this.positiveRE = positiveRE;
-        positiveRE = genSRE().getPositiveRE();
-        negativeRE = genSRE().getNegativeRE();
+        positiveAm = null;
+        positiveDisplay = null;
+        touch();
     }
 
     public void setNegativeRE(String negativeRE) {
         this.negativeRE = negativeRE;
-        positiveRE = genSRE().getPositiveRE();
-        negativeRE = genSRE().getNegativeRE();
+        negativeAm = null;
+        negativeDisplay = null;
+        touch();
+    }
+
+    /**
+     * Gives this SRE a new version stamp, invalidating values cached by composites that contain it.
+     */
+    protected void touch() {
+        version = versions.incrementAndGet();
+    }
+
+    /**
+     * @return version stamp of this SRE; newer stamps are larger
+     */
+    long version() {
+        return version;
+    }
+
+    static long versionOf(SRE sre) {
+        return (sre == null) ? 0 : sre.version();
+    }
+
+    /**
+     * @return the root policy's plan for acting on this SRE, rebuilt only when the SRE has changed
+     */
+    ActionPlan actionPlan() {
+        long current = version();
+        ActionPlan plan = actionPlan;
+        if (plan == null || plan.version != current) {
+            plan = ActionPlan.forSRE(this, current);
+            actionPlan = plan;
+        }
+        return plan;
     }
 
     public SRE() {
@@ -31,43 +85,141 @@ public class SRE {
     public SRE(String positive, String negative) {
         positiveRE = convertSRE(positive);
         negativeRE = convertSRE(negative);
-        positiveRE = genSRE().getPositiveRE();
-        negativeRE = genSRE().getNegativeRE();
     }
 
-    protected SRE genSRE() {
-        return SREUtil.getBaseSRE(this);
+    /**
+     * Builds an SRE from the halves of SREs already in hand. A half's text may be null when only its automaton is
+     * known, and its automaton may be null when it has not been built yet.
+     */
+    static SRE fromParts(String positiveText, Automaton positiveAm, String negativeText, Automaton negativeAm) {
+        SRE sre = new SRE();
+        sre.positiveRE = positiveText;
+        sre.positiveAm = positiveAm;
+        sre.negativeRE = negativeText;
+        sre.negativeAm = negativeAm;
+        return sre;
+    }
 
+    /**
+     * @return the SRE this one evaluates to; a plain SRE is its own value
+     */
+    protected SRE genSRE() {
+        return this;
     }
 
     public boolean isNeutral() {
-        return (positiveRE == null && negativeRE == null);
+        return (getPositiveRE() == null && getNegativeRE() == null);
     }
 
     public String positiveRE() {
-        if (positiveRE != null) {
-            return positiveRE;
+        String positive = getPositiveRE();
+        if (positive != null) {
+            return positive;
         } else {
             return "";
         }
     }
 
     public String getPositiveRE() {
+        SRE value = genSRE();
+        if (value != this) {
+            return (value == null) ? null : value.getPositiveRE();
+        }
+        if (positiveRE == null && positiveAm != null) {
+            if (positiveDisplay == null) {
+                positiveDisplay = SREUtil.toDisplayString(positiveAm);
+            }
+            return positiveDisplay;
+        }
         return positiveRE;
     }
 
     public String getNegativeRE() {
+        SRE value = genSRE();
+        if (value != this) {
+            return (value == null) ? null : value.getNegativeRE();
+        }
+        if (negativeRE == null && negativeAm != null) {
+            if (negativeDisplay == null) {
+                negativeDisplay = SREUtil.toDisplayString(negativeAm);
+            }
+            return negativeDisplay;
+        }
         return negativeRE;
     }
 
     public String negativeRE() {
-        if (negativeRE != null) {
-            return negativeRE;
+        String negative = getNegativeRE();
+        if (negative != null) {
+            return negative;
         } else {
             return "";
         }
     }
 
+    /**
+     * @return policy text of the positive half, or null if it only exists as an automaton
+     */
+    String positiveText() {
+        SRE value = genSRE();
+        if (value != this) {
+            return (value == null) ? null : value.positiveText();
+        }
+        return positiveRE;
+    }
+
+    String negativeText() {
+        SRE value = genSRE();
+        if (value != this) {
+            return (value == null) ? null : value.negativeText();
+        }
+        return negativeRE;
+    }
+
+    /**
+     * @return minimized automaton of the positive half, built from its text on first use
+     */
+    Automaton positiveAutomaton() {
+        SRE value = genSRE();
+        if (value != this) {
+            return (value == null) ? SREUtil.toAutomaton(null) : value.positiveAutomaton();
+        }
+        if (positiveAm == null) {
+            positiveAm = SREUtil.toAutomaton(positiveRE);
+        }
+        return positiveAm;
+    }
+
+    Automaton negativeAutomaton() {
+        SRE value = genSRE();
+        if (value != this) {
+            return (value == null) ? SREUtil.toAutomaton(null) : value.negativeAutomaton();
+        }
+        if (negativeAm == null) {
+            negativeAm = SREUtil.toAutomaton(negativeRE);
+        }
+        return negativeAm;
+    }
+
+    /**
+     * @return true if neither half can match anything; checked on the text when there is one, so policy SREs do
+     *         not need their automata built for this
+     */
+    boolean isEmpty() {
+        SRE value = genSRE();
+        if (value != this) {
+            return value == null || value.isEmpty();
+        }
+        return isEmptyHalf(positiveRE, positiveAm) && isEmptyHalf(negativeRE, negativeAm);
+    }
+
+    private static boolean isEmptyHalf(String text, Automaton am) {
+        if (text != null) {
+            return text.equals("null") || text.trim().equals("");
+        }
+        return am == null || am.isEmpty();
+    }
+
     /**
      * Converts an SRE containing PoCo-specific syntax to an acceptable Java
      * RegEx
@@ -88,7 +240,7 @@ public class SRE {
 
     @Override
     public String toString() {
-        return "SRE [positiveRE=" + positiveRE + ", negativeRE=" + negativeRE
+        return "SRE [positiveRE=" + getPositiveRE() + ", negativeRE=" + getNegativeRE()
                 + "]";
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,8 @@ package com.poco.PoCoRuntime;
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.RegExp;
 
+import java.util.Arrays;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,6 +13,29 @@ import java.util.regex.Pattern;
  */
 
 public class SREUtil {
+	/** Maximum number of SRE operation results kept in the operation cache */
+	static final int OP_CACHE_SIZE = 1024;
+
+	/** Every string that is an action, i.e. has an argument list */
+	private static final Automaton ACTIONS = new RegExp(".+\\(.*\\)")
+			.toAutomaton();
+
+	/**
+	 * Results of the operations that build automata, keyed by the operator
+	 * and the operands' halves. SRE results are stored as their two halves so
+	 * callers always get a fresh SRE; predicates as Boolean.
+	 */
+	private static final LruCache<OpKey, Object> opCache = new LruCache<>(
+			OP_CACHE_SIZE);
+
+	/**
+	 * @return the cache of SRE operation results, e.g. to read its hit and
+	 *         miss counters
+	 */
+	public static LruCache<?, ?> getOpCache() {
+		return opCache;
+	}
+
 	/**
 	 * This function is used to perform Binary Set Operations on SRES
 	 *
@@ -27,94 +52,47 @@ public class SREUtil {
 		if (isEmpty(sre1) && isEmpty(sre2))
 			return null;
 
-		String positiveRE = null, negativeRE = null;
+		OpKey key = new OpKey(operator, Half.positive(sre1).key(),
+				Half.negative(sre1).key(), Half.positive(sre2).key(),
+				Half.negative(sre2).key());
+		Half[] cached = (Half[]) opCache.get(key);
+		if (cached == null) {
+			cached = computeBOPs(operator, sre1, sre2);
+			opCache.put(key, cached);
+		}
+		return toSRE(cached);
+	}
+
+	private static Half[] computeBOPs(String operator, SRE sre1, SRE sre2) {
+		Half pos1 = Half.positive(sre1), neg1 = Half.negative(sre1);
+		Half pos2 = Half.positive(sre2), neg2 = Half.negative(sre2);
+		Half positive = Half.NONE, negative = Half.NONE;
 		switch (operator) {
 		case "Union":
 		case "Punion":
 		case "Disjunction":
-			if (sre1.positiveRE().trim().equals(sre2.positiveRE().trim()))
-				positiveRE = sre1.positiveRE().trim();
-			else if (sre1.positiveRE().trim()
-					.contains(sre2.positiveRE().trim()))
-				positiveRE = sre1.positiveRE().trim();
-			else if (sre2.positiveRE().trim()
-					.contains(sre1.positiveRE().trim()))
-				positiveRE = sre2.positiveRE().trim();
-			else
-				positiveRE = operate("Union", sre1.positiveRE(),
-						sre2.positiveRE());
-
-			if (sre1.negativeRE().trim().equals(sre2.negativeRE().trim()))
-				negativeRE = sre1.negativeRE().trim();
-			else if (sre1.negativeRE().trim()
-					.contains(sre2.negativeRE().trim()))
-				negativeRE = sre1.negativeRE().trim();
-			else if (sre2.negativeRE().trim()
-					.contains(sre1.negativeRE().trim()))
-				negativeRE = sre2.negativeRE().trim();
-			else
-				negativeRE = operate("Union", sre1.negativeRE(),
-						sre2.negativeRE());
-			
+			positive = union(pos1, pos2);
+			negative = union(neg1, neg2);
 			if (operator.equals("Union")) {
 				// Positive favoring union of SREs
-				if (negativeRE != null)
-					negativeRE = operate("Minus", negativeRE, positiveRE);
+				negative = minus(negative, positive);
 			} else if (operator.equals("Punion")) {
 				// Negative favoring union of SREs
-				if (positiveRE != null)
-					positiveRE = operate("Minus", positiveRE, negativeRE);
+				positive = minus(positive, negative);
 			}
 			break;
 		case "Conjunction":
 			// pos = (pos1 n pos2) U (neg1 n neg2);
 		case "Equals":
-			if (sre1.positiveRE().trim().equals(sre2.positiveRE().trim()))
-				positiveRE = sre1.positiveRE().trim();
-			else if (sre1.positiveRE().trim()
-					.contains(sre2.positiveRE().trim()))
-				positiveRE = sre2.positiveRE().trim();
-			else if (sre2.positiveRE().trim()
-					.contains(sre1.positiveRE().trim()))
-				positiveRE = sre1.positiveRE().trim();
-			else
-				positiveRE = operate("InterSection", sre1.positiveRE(),
-						sre2.positiveRE());
-
-			if (operator.equals("Union")) {
-				if (sre1.negativeRE().trim().equals(sre2.negativeRE().trim()))
-					negativeRE = sre1.negativeRE().trim();
-				else if (sre1.negativeRE().trim()
-						.contains(sre2.negativeRE().trim()))
-					negativeRE = sre1.negativeRE().trim();
-				else if (sre2.negativeRE().trim()
-						.contains(sre1.negativeRE().trim()))
-					negativeRE = sre2.negativeRE().trim();
-				else
-					negativeRE = operate("Union", sre1.negativeRE(),
-							sre2.negativeRE());
-			} else {
-				if (sre1.negativeRE().trim().equals(sre2.negativeRE().trim()))
-					negativeRE = sre1.negativeRE().trim();
-				else if (sre1.negativeRE().trim()
-						.contains(sre2.negativeRE().trim()))
-					negativeRE = sre2.negativeRE().trim();
-				else if (sre2.negativeRE().trim()
-						.contains(sre1.negativeRE().trim()))
-					negativeRE = sre1.negativeRE().trim();
-				else
-					negativeRE = operate("InterSection", sre1.negativeRE(),
-							sre2.negativeRE());
-				positiveRE = operate("Union", positiveRE, negativeRE);
-				// nes = % - pos
-				negativeRE = performUOPs("Complement",
-						new SRE(positiveRE, null)).getNegativeRE();
-			}
+			positive = union(intersection(pos1, pos2),
+					intersection(neg1, neg2));
+			// nes = % - pos
+			negative = positive;
 			break;
 		default:
 			break;
 		}
-		return new SRE(positiveRE, negativeRE);
+		return new Half[] { positive.built(), negative.built() };
 	}
 
 	/**
@@ -132,102 +110,84 @@ public class SREUtil {
 			return null;
 		switch (operator) {
 		case "Complement": // Switches sign of SRE
-			return new SRE(sre.getNegativeRE(), sre.getPositiveRE());
+			return toSRE(new Half[] { Half.negative(sre), Half.positive(sre) });
 		case "Action": // Includes only the actions in SRE
-			RegExp rePos = new RegExp(sre.getPositiveRE().replace("%", ".*"));
-			RegExp reNeg = new RegExp(sre.getNegativeRE().replace("%", ".*"));
-			RegExp action = new RegExp(".+\\(.*\\)");
-			Automaton amPos = rePos.toAutomaton();
-			Automaton amNeg = reNeg.toAutomaton();
-			Automaton amAct = action.toAutomaton();
-			return new SRE(amPos.intersection(amAct).toString(), amPos
-					.intersection(amAct).toString());
-
 		case "Result": // Includes only the results in SRE
-			RegExp rePos1 = new RegExp(sre.getPositiveRE().replace("%", ".*"));
-			RegExp reNeg1 = new RegExp(sre.getNegativeRE().replace("%", ".*"));
-			RegExp action1 = new RegExp(".+\\(.*\\)");
-			Automaton amPos1 = rePos1.toAutomaton();
-			Automaton amNeg1 = reNeg1.toAutomaton();
-			Automaton amAct1 = action1.toAutomaton();
-			Automaton resPos = amPos1.minus(amPos1.intersection(amAct1));
-			Automaton resNeg = amNeg1.minus(amNeg1.intersection(amAct1));
-			return new SRE(resPos.toString(), resNeg.toString());
-
+			OpKey key = new OpKey(operator, Half.positive(sre).key(),
+					Half.negative(sre).key());
+			Half[] cached = (Half[]) opCache.get(key);
+			if (cached == null) {
+				cached = computeUOPs(operator, sre);
+				opCache.put(key, cached);
+			}
+			return toSRE(cached);
 		case "Positive": // Includes only positive portion of SRE
-			return new SRE(sre.getPositiveRE(), null);
+			return toSRE(new Half[] { Half.positive(sre), Half.NONE });
 		case "Negative": // Includes only negative portion of SRE
-			return new SRE(null, sre.getNegativeRE());
+			return toSRE(new Half[] { Half.NONE, Half.negative(sre) });
 		default:
 			return sre;
 		}
 	}
 
-	public static SRE getBaseSRE(SRE sre) {
-		Class<BopSRE> classBS = BopSRE.class;
-		Class<UopSRE> classUS = UopSRE.class;
-		Class<? extends SRE> classChild = sre.getClass();
-		if (classBS.isAssignableFrom(classChild)) { // BopSRE
-			BopSRE bopSre = (BopSRE) sre;
-			SRE result = SREUtil.performBOPs(bopSre.getSrebop(),
-					getBaseSRE(bopSre.sre1), getBaseSRE(bopSre.sre2));
-			// System.out.println(result);
-			return result;
-		} else if (classUS.isAssignableFrom(classChild)) { // UopSRE
-			UopSRE uopSre = (UopSRE) sre;
-			SRE result = SREUtil.performUOPs(uopSre.getSreuop(),
-					getBaseSRE(uopSre.sre));
-			// System.out.println(result);
-			return result;
-		} else
-			return sre;
+	private static Half[] computeUOPs(String operator, SRE sre) {
+		Automaton amPos = sre.positiveAutomaton();
+		Automaton amNeg = sre.negativeAutomaton();
+		switch (operator) {
+		case "Action":
+			Automaton actions = amPos.intersection(ACTIONS);
+			return new Half[] { Half.computed(actions),
+					Half.computed(actions) };
+		default: // Result
+			return new Half[] { Half.computed(amPos.minus(ACTIONS)),
+					Half.computed(amNeg.minus(ACTIONS)) };
+		}
 	}
 
 	/**
-	 * This function use to operate set operations
-	 *
-	 * @param op
-	 *            This is the first parameter to specify the set operator, which
-	 *            can be union, punion, conjunction and disjunction
-	 * @param sre1
-	 *            This is the first sre value
-	 * @param sre2
-	 *            This is the second sre value
-	 * @return
+	 * @return the value of the SRE: the SRE itself for a plain SRE, the
+	 *         (cached) result of the operation for a BopSRE or UopSRE
 	 */
-	private static String operate(String op, String sre1, String sre2) {
-		if ((sre1 == null || sre1.trim().equals(""))
-				&& (sre2 == null || sre2.trim().equals("")))
+	public static SRE getBaseSRE(SRE sre) {
+		if (sre == null)
 			return null;
-		String returnRe = null;
-		if (!sre1.trim().equals("")) { // sre1pos is not empty
-			if (!sre2.trim().equals("")) { // case both positive is not empty
-				RegExp re1 = new RegExp(validateStr(sre1));
-				RegExp re2 = new RegExp(validateStr(sre2));
-				Automaton am1 = re1.toAutomaton();
-				Automaton am2 = re2.toAutomaton();
-				switch (op) {
-				case "Union":
-					returnRe = unionOP(am1, am2);
-					break;
-				case "InterSection":
-					returnRe = interSectOP(am1, am2);
-					break;
-				case "Minus":
-					returnRe = minusOP(am1, am2);
-					break;
-				default:
-					break;
-				}
-			} else { // sre2pos is empty, so union is just the sre1Pos
-				returnRe = sre1;
-			}
-		} else { // sre1pos is empty
-			if (!sre2.trim().equals("")) { // case both positive is not empty
-				returnRe = sre2;
-			}
-		}
-		return returnRe;
+		return sre.genSRE();
+	}
+
+	/**
+	 * Union of two halves. If one half already contains the other, that half
+	 * is returned as it is, keeping its policy text.
+	 */
+	private static Half union(Half half1, Half half2) {
+		if (half1.sameText(half2) || half2.am().subsetOf(half1.am()))
+			return half1;
+		if (half1.am().subsetOf(half2.am()))
+			return half2;
+		return Half.computed(half1.am().union(half2.am()));
+	}
+
+	/**
+	 * Intersection of two halves. If one half is contained in the other, that
+	 * half is returned as it is, keeping its policy text.
+	 */
+	private static Half intersection(Half half1, Half half2) {
+		if (half1.sameText(half2) || half1.am().subsetOf(half2.am()))
+			return half1;
+		if (half2.am().subsetOf(half1.am()))
+			return half2;
+		return Half.computed(half1.am().intersection(half2.am()));
+	}
+
+	private static Half minus(Half half1, Half half2) {
+		if (half1.am().isEmpty() || half2.am().isEmpty()
+				|| half1.am().intersection(half2.am()).isEmpty())
+			return half1;
+		return Half.computed(half1.am().minus(half2.am()));
+	}
+
+	private static SRE toSRE(Half[] halves) {
+		return SRE.fromParts(halves[0].text, halves[0].am, halves[1].text,
+				halves[1].am);
 	}
 
 	/**
@@ -240,104 +200,153 @@ public class SREUtil {
 		if (isEmpty(sre))
 			return false;
 
-		RegExp rePos = new RegExp(sre.getPositiveRE().replace("%", ".*"));
-		RegExp reNeg = new RegExp(sre.getNegativeRE().replace("%", ".*"));
-		Automaton amPos = rePos.toAutomaton();
-		Automaton amNeg = reNeg.toAutomaton();
-		if (!amPos.isFinite() || !amNeg.isFinite())
-			return true;
-		else
-			return false;
+		OpKey key = new OpKey("Infinite", Half.positive(sre).key(),
+				Half.negative(sre).key());
+		Boolean cached = (Boolean) opCache.get(key);
+		if (cached == null) {
+			cached = !sre.positiveAutomaton().isFinite()
+					|| !sre.negativeAutomaton().isFinite();
+			opCache.put(key, cached);
+		}
+		return cached;
 	}
 
 	public static boolean isSubSet(SRE sre1, SRE sre2) {
 		if (isEmpty(sre1))
 			return true;
 
-		RegExp rePos1 = new RegExp(sre1.getPositiveRE().replace("%", ".*"));
-		RegExp reNeg1 = new RegExp(sre1.getNegativeRE().replace("%", ".*"));
-		Automaton amPos1 = rePos1.toAutomaton();
-		Automaton amNeg1 = reNeg1.toAutomaton();
-
-		RegExp rePos2 = new RegExp(sre2.getPositiveRE().replace("%", ".*"));
-		RegExp reNeg2 = new RegExp(sre2.getNegativeRE().replace("%", ".*"));
-		Automaton amPos2 = rePos2.toAutomaton();
-		Automaton amNeg2 = reNeg2.toAutomaton();
-
-		if (amPos1.subsetOf(amPos2) && amNeg1.subsetOf(amNeg2))
-			return true;
-		else
-			return false;
+		OpKey key = new OpKey("SubSet", Half.positive(sre1).key(),
+				Half.negative(sre1).key(), Half.positive(sre2).key(),
+				Half.negative(sre2).key());
+		Boolean cached = (Boolean) opCache.get(key);
+		if (cached == null) {
+			cached = sre1.positiveAutomaton().subsetOf(
+					sre2.positiveAutomaton())
+					&& sre1.negativeAutomaton().subsetOf(
+							sre2.negativeAutomaton());
+			opCache.put(key, cached);
+		}
+		return cached;
 	}
 
 	public static boolean isEquals(SRE sre1, SRE sre2) {
 		if (isEmpty(sre1) && isEmpty(sre2))
 			return true;
 
-		RegExp rePos1 = new RegExp(sre1.getPositiveRE().replace("%", ".*"));
-		RegExp reNeg1 = new RegExp(sre1.getNegativeRE().replace("%", ".*"));
-		Automaton amPos1 = rePos1.toAutomaton();
-		Automaton amNeg1 = reNeg1.toAutomaton();
-
-		RegExp rePos2 = new RegExp(sre2.getPositiveRE().replace("%", ".*"));
-		RegExp reNeg2 = new RegExp(sre2.getNegativeRE().replace("%", ".*"));
-		Automaton amPos2 = rePos2.toAutomaton();
-		Automaton amNeg2 = reNeg2.toAutomaton();
+		OpKey key = new OpKey("Equals", Half.positive(sre1).key(),
+				Half.negative(sre1).key(), Half.positive(sre2).key(),
+				Half.negative(sre2).key());
+		Boolean cached = (Boolean) opCache.get(key);
+		if (cached == null) {
+			cached = sre1.positiveAutomaton().equals(sre2.positiveAutomaton())
+					&& sre1.negativeAutomaton().equals(
+							sre2.negativeAutomaton());
+			opCache.put(key, cached);
+		}
+		return cached;
+	}
 
-		if (amPos1.equals(amPos2) && amNeg1.equals(amNeg2))
-			return true;
-		else
+	/**
+	 * Checks whether an SRE decides the result of a binary operation on its
+	 * own, so that performBOPs(operator, sre, other) is the same SRE for
+	 * every other operand (see computeBOPs):
+	 * <ul>
+	 * <li>Union: the positive half matches everything</li>
+	 * <li>Punion: the negative half matches everything</li>
+	 * <li>Disjunction: both halves match everything</li>
+	 * <li>Conjunction, Equals: both halves are empty (Neutral)</li>
+	 * </ul>
+	 *
+	 * @param operator
+	 *            binary operator, as for performBOPs
+	 * @param sre
+	 *            SRE value, not null
+	 * @return true if the other operand cannot change the result
+	 */
+	public static boolean isAbsorbing(String operator, SRE sre) {
+		switch (operator) {
+		case "Conjunction":
+		case "Equals":
+			return isEmpty(sre);
+		case "Union":
+		case "Punion":
+		case "Disjunction":
+			break;
+		default:
 			return false;
+		}
+		if (isEmpty(sre))
+			return false;
+
+		OpKey key = new OpKey("Absorbing", operator,
+				Half.positive(sre).key(), Half.negative(sre).key());
+		Boolean cached = (Boolean) opCache.get(key);
+		if (cached == null) {
+			boolean positiveTotal = sre.positiveAutomaton().isTotal();
+			boolean negativeTotal = sre.negativeAutomaton().isTotal();
+			if (operator.equals("Union"))
+				cached = positiveTotal;
+			else if (operator.equals("Punion"))
+				cached = negativeTotal;
+			else
+				cached = positiveTotal && negativeTotal;
+			opCache.put(key, cached);
+		}
+		return cached;
 	}
 
-	private static String unionOP(Automaton am1, Automaton am2) {
-		Automaton amResult = am1.union(am2);
-		if (!amResult.isEmpty())
-			return amResult.toString();
-		else
-			return null;
+	private static boolean isEmpty(SRE sre) {
+		return sre.isEmpty();
 	}
 
-	private static String interSectOP(Automaton am1, Automaton am2) {
-		Automaton amResult = am1.intersection(am2);
-		if (!amResult.isEmpty())
-			return amResult.toString();
-		else
-			return null;
+	/**
+	 * Builds the minimized automaton for one half of an SRE. PoCo's %
+	 * wildcard matches anything; variable references and type markers
+	 * (#type{...}) are dropped.
+	 *
+	 * @param re
+	 *            policy text of the half, may be null
+	 * @return automaton accepting the half's strings; empty for null or blank
+	 *         text
+	 */
+	static Automaton toAutomaton(String re) {
+		if (re == null || re.trim().equals("") || re.equals("null"))
+			return Automaton.makeEmpty();
+		Automaton am = new RegExp(validateStr(re)).toAutomaton();
+		am.minimize();
+		return am;
 	}
 
-	private static String minusOP(Automaton am1, Automaton am2) {
-		Automaton amResult = am1.minus(am2);
-		if (!amResult.isEmpty())
-			return amResult.toString();
-		else
+	/**
+	 * Renders an automaton for display. A small finite language is listed as
+	 * its strings separated by |, anything else falls back to the
+	 * automaton's state listing.
+	 *
+	 * @return the string, or null if the automaton accepts nothing
+	 */
+	static String toDisplayString(Automaton am) {
+		if (am.isEmpty())
 			return null;
+		Set<String> strings = am.getFiniteStrings(DISPLAY_LIMIT);
+		if (strings == null)
+			return am.toString();
+		String[] sorted = strings.toArray(new String[strings.size()]);
+		Arrays.sort(sorted);
+		StringBuilder display = new StringBuilder();
+		for (String str : sorted) {
+			if (display.length() > 0)
+				display.append('|');
+			display.append(str);
+		}
+		return display.toString();
 	}
 
-	private static boolean isEmpty(SRE sre) {
-		String srePos = sre.positiveRE();
-		String sreNeg = sre.negativeRE();
-		if ((srePos.equals("null") || srePos.trim().equals(""))
-				&& (sreNeg.equals("null") || sreNeg.trim().equals("")))
-			return true;
-		else
-			return false;
-	}
-
-	private static boolean isEqual(String sre1, String sre2) {
-		RegExp re1 = new RegExp(sre1.replace("%", ".*"));
-		RegExp re2 = new RegExp(sre2.replace("%", ".*"));
-		Automaton am1 = re1.toAutomaton();
-		Automaton am2 = re2.toAutomaton();
-		if (am1.equals(am2))
-			return true;
-		else
-			return false;
-	}
+	/** Largest finite language toDisplayString lists string by string */
+	private static final int DISPLAY_LIMIT = 16;
 
 	private static String validateStr(String str) {
-		return str.replaceAll("(%|\\$[a-zA-Z0-9\\.\\-_]+)", "").replaceAll(
-				"#|\\{|\\}", "");
+		return str.replaceAll("\\$[a-zA-Z0-9\\.\\-_]+", "")
+				.replaceAll("#|\\{|\\}", "").replace("%", ".*");
 	}
 
 	public static boolean StringMatch(String matchingVal, String matchingRegex) {
@@ -367,4 +376,109 @@ public class SREUtil {
 	public static String concatClsMethod(String className, String methodName) {
 		return className.trim().concat(".").concat(methodName.trim());
 	}
+
+	/**
+	 * Key of the operation cache: an operator and its operands' halves.
+	 */
+	private static final class OpKey {
+		private final String op;
+		private final Object[] operands;
+		private final int hash;
+
+		OpKey(String op, Object... operands) {
+			this.op = op;
+			this.operands = operands;
+			this.hash = 31 * op.hashCode() + Arrays.hashCode(operands);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof OpKey))
+				return false;
+			OpKey other = (OpKey) obj;
+			return hash == other.hash && op.equals(other.op)
+					&& Arrays.equals(operands, other.operands);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * One half of an SRE: its policy text, or null if it has none, and its
+	 * automaton. A half with text identifies itself by the text, so its
+	 * automaton is only built (and kept in its SRE) when an operation misses
+	 * the cache and needs it.
+	 */
+	private static final class Half {
+		static final Half NONE = computed(Automaton.makeEmpty());
+
+		final String text;
+		private Automaton am;
+		/* SRE the automaton is built from, null once it is built */
+		private SRE sre;
+		private final boolean positive;
+
+		private Half(String text, Automaton am, SRE sre, boolean positive) {
+			this.text = text;
+			this.am = am;
+			this.sre = sre;
+			this.positive = positive;
+		}
+
+		/**
+		 * @return half for an automaton produced by an operation, minimized
+		 *         here so that it is never mutated once it is shared
+		 */
+		static Half computed(Automaton am) {
+			am.minimize();
+			return new Half(null, am, null, true);
+		}
+
+		static Half positive(SRE sre) {
+			String text = sre.positiveText();
+			if (text == null)
+				return new Half(null, sre.positiveAutomaton(), null, true);
+			return new Half(text, null, sre, true);
+		}
+
+		static Half negative(SRE sre) {
+			String text = sre.negativeText();
+			if (text == null)
+				return new Half(null, sre.negativeAutomaton(), null, false);
+			return new Half(text, null, sre, false);
+		}
+
+		Automaton am() {
+			if (am == null) {
+				am = positive ? sre.positiveAutomaton() : sre.negativeAutomaton();
+				sre = null;
+			}
+			return am;
+		}
+
+		/**
+		 * @return the half with its automaton built and without a reference to
+		 *         its SRE, to be kept in the operation cache
+		 */
+		Half built() {
+			am();
+			return this;
+		}
+
+		boolean sameText(Half other) {
+			return text != null && other.text != null
+					&& text.trim().equals(other.text.trim());
+		}
+
+		/**
+		 * @return what identifies the half in the operation cache: its text
+		 *         if it has one, otherwise its automaton
+		 */
+		Object key() {
+			return (text != null) ? text : am;
+		}
+	}
 }
@@ -17,17 +17,12 @@ public class SequentialExecution extends AbstractExecution implements
 
 	// use to set the current modifier for the first child before start query,
 	// and later update modifier while advance cursor
-	public void getCurrentChildModifier() { 
-		if (this.children.size() > 0 && currentCursor < this.children.size()) {
-			Class<AbstractExecution> classAE = AbstractExecution.class;
-			Class<? extends EventResponder> classChild = children.get(
-					this.currentCursor).getClass();
-			if (classAE.isAssignableFrom(classChild)) {
-				// System.out.println("it is assignable from abstractExecution");
-				currentChildIsZeroPlus = ((AbstractExecution) this.children
-						.get(this.currentCursor)).isZeroPlus();
-				currentChildIsOnePlus = ((AbstractExecution) this.children
-						.get(this.currentCursor)).isOnePlus();
+	public void getCurrentChildModifier() {
+		if (currentCursor < this.children.size()) {
+			int childModifier = childModifiers[currentCursor];
+			if (childModifier != NOT_EXECUTION) {
+				currentChildIsZeroPlus = childModifier == ZERO_PLUS;
+				currentChildIsOnePlus = childModifier == ONE_PLUS;
 			} else {
 				// now is query the exchange, so isZero and isPlus is the same
 			}
@@ -57,11 +52,9 @@ public class SequentialExecution extends AbstractExecution implements
 	 * the modifier so that we always get current execution's modifier
 	 */
 	protected void advanceCursor() {
-		if (isZeroPlus || isOnePlus)
-			currentCursor = (currentCursor + 1) % children.size();
-		else
-			currentCursor++;
-		
+		if (++currentCursor == children.size() && modifier != NO_MODIFIER)
+			currentCursor = 0;
+
 		if (currentCursor >= children.size()) {
 			exhausted = true; 
 		} else {
@@ -0,0 +1,352 @@
+package com.poco.PoCoRuntime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A policy's execution tree flattened into a deterministic state machine (see StateMachinePolicy). A state stands for
+ * the cursors of all the tree's executions, so an event is handled by asking a few Exchange leaves whether they
+ * accept it and following a table, instead of walking the tree.
+ *
+ * The tables are worked out by running the interpreter itself on a copy of the tree whose leaves answer from a script,
+ * once for every combination of answers that matters in every reachable state. Each state gets a decision tree over
+ * the leaves it asks, ending in a terminal: the next state and the leaf whose SRE is returned (or none). Leaves without
+ * a matcher (the _ case) always accept and are not asked. The result therefore follows the interpreter exactly,
+ * quirks included, as long as matchers give the same answer when asked twice.
+ *
+ * Tables only depend on the shape and starting cursors of the tree, so they are shared by every tree like it, e.g.
+ * the per-thread copies of a policy. Trees with map executions, execution or Exchange subclasses, more than
+ * MAX_STATES states or MAX_NODES decisions, or events the interpreter would loop on forever are not flattened.
+ */
+final class StateMachine {
+    /** most states a tree is flattened into */
+    static final int MAX_STATES = 1024;
+    /** most decision nodes over all states */
+    static final int MAX_NODES = 16384;
+    /* leaf answers one run may read before it is taken to loop forever */
+    private static final int MAX_STEPS = 4096;
+
+    private static final StateMachine NOT_FLATTENED = new StateMachine(null, null, null, null, null, null);
+    private static final ConcurrentHashMap<String, StateMachine> machines = new ConcurrentHashMap<>();
+
+    /* per state: its first decision node, or ~terminal if it asks no leaf */
+    private final int[] start;
+    /* decision nodes: the leaf asked, and where to go if it accepts or rejects the event */
+    private final int[] test;
+    private final int[] onAccept;
+    private final int[] onReject;
+    /* terminals: next state, and leaf whose SRE is returned or -1 for null */
+    private final int[] nextState;
+    private final int[] resultLeaf;
+
+    private StateMachine(int[] start, int[] test, int[] onAccept, int[] onReject, int[] nextState, int[] resultLeaf) {
+        this.start = start;
+        this.test = test;
+        this.onAccept = onAccept;
+        this.onReject = onReject;
+        this.nextState = nextState;
+        this.resultLeaf = resultLeaf;
+    }
+
+    /**
+     * @param root   root execution, with its cursors where querying starts
+     * @param leaves filled with the tree's Exchange leaves in depth-first order, the indexes the tables use
+     * @return the state machine, starting in state 0, or null if the tree is not flattened
+     */
+    static StateMachine forExecution(AbstractExecution root, List<Exchange> leaves) {
+        List<SequentialExecution> executions = new ArrayList<>();
+        StringBuilder shape = new StringBuilder();
+        if (!describe(root, shape, executions, leaves))
+            return null;
+        String key = shape.toString();
+        StateMachine machine = machines.get(key);
+        if (machine == null) {
+            machine = new Builder(root, executions, leaves).build();
+            if (machine == null)
+                machine = NOT_FLATTENED;
+            machines.putIfAbsent(key, machine);
+        }
+        return (machine == NOT_FLATTENED) ? null : machine;
+    }
+
+    /**
+     * Writes out the classes, modifiers and cursors of the tree.
+     *
+     * @return false if the tree has responders the state machine cannot stand for
+     */
+    private static boolean describe(EventResponder responder, StringBuilder shape,
+                                    List<SequentialExecution> executions, List<Exchange> leaves) {
+        if (responder.getClass() == Exchange.class) {
+            Exchange leaf = (Exchange) responder;
+            leaves.add(leaf);
+            shape.append((leaf.getMatcher() == null) ? '_' : 'x');
+            return true;
+        }
+        // a map execution builds new SREs from its children's, and advances its cursor in accepts
+        if (responder.getClass() != SequentialExecution.class && responder.getClass() != AlternationExecution.class)
+            return false;
+        SequentialExecution execution = (SequentialExecution) responder;
+        executions.add(execution);
+        shape.append((execution instanceof AlternationExecution) ? 'A' : 'S').append(modifier(execution));
+        shape.append(Arrays.toString(cursors(execution))).append('(');
+        for (EventResponder child : execution.getChildren()) {
+            if (!describe(child, shape, executions, leaves))
+                return false;
+        }
+        shape.append(')');
+        return true;
+    }
+
+    private static String modifier(AbstractExecution execution) {
+        if (execution.isZeroPlus())
+            return "*";
+        return execution.isOnePlus() ? "+" : "none";
+    }
+
+    private static int[] cursors(SequentialExecution execution) {
+        return new int[] {execution.currentCursor, execution.exhausted ? 1 : 0,
+                execution.currentChildIsZeroPlus ? 1 : 0, execution.currentChildIsOnePlus ? 1 : 0};
+    }
+
+    int getNumStates() {
+        return start.length;
+    }
+
+    /**
+     * @return the terminal the event leads to from the state
+     */
+    int terminal(int state, Exchange[] leaves, Event event) {
+        int node = start[state];
+        while (node >= 0) {
+            node = leaves[test[node]].accepts(event) ? onAccept[node] : onReject[node];
+        }
+        return ~node;
+    }
+
+    /**
+     * @return true if the event leads from the state to a terminal that returns an SRE
+     */
+    boolean accepts(int state, Exchange[] leaves, Event event) {
+        return resultLeaf[terminal(state, leaves, event)] >= 0;
+    }
+
+    int nextState(int terminal) {
+        return nextState[terminal];
+    }
+
+    SRE result(int terminal, Exchange[] leaves) {
+        int leaf = resultLeaf[terminal];
+        return (leaf < 0) ? null : leaves[leaf].getReturnSRE();
+    }
+
+    /**
+     * Runs the interpreter on a copy of a tree to find its states and their decision trees.
+     */
+    private static final class Builder {
+        private final List<SequentialExecution> executions = new ArrayList<>();
+        private final AbstractExecution root;
+        private final int[] initial;
+        private final boolean[] alwaysAccepts;
+        /* SRE returned by each probe leaf, to tell which leaf a result came from */
+        private final IdentityHashMap<SRE, Integer> markers = new IdentityHashMap<>();
+
+        private final List<int[]> states = new ArrayList<>();
+        private final HashMap<String, Integer> stateIds = new HashMap<>();
+        private final List<int[]> nodes = new ArrayList<>();
+        private final List<int[]> terminals = new ArrayList<>();
+        private final HashMap<String, Integer> terminalIds = new HashMap<>();
+
+        /* the current run: answers to the leaves asked first, then the leaves asked in order */
+        private boolean[] script;
+        private int scriptLength;
+        private final byte[] answers;
+        private final int[] asked;
+        private int numAsked;
+        private int steps;
+
+        Builder(AbstractExecution original, List<SequentialExecution> originals, List<Exchange> leaves) {
+            initial = new int[originals.size() * 4];
+            for (int i = 0; i < originals.size(); i++) {
+                System.arraycopy(cursors(originals.get(i)), 0, initial, i * 4, 4);
+            }
+            alwaysAccepts = new boolean[leaves.size()];
+            answers = new byte[leaves.size()];
+            asked = new int[leaves.size()];
+            AbstractExecution copy = null;
+            try {
+                copy = (AbstractExecution) copy(original);
+            } catch (PoCoException pex) {
+                // the original was built with the same modifiers
+            }
+            root = copy;
+        }
+
+        private EventResponder copy(EventResponder responder) throws PoCoException {
+            if (responder instanceof Exchange) {
+                int leaf = markers.size();
+                alwaysAccepts[leaf] = ((Exchange) responder).getMatcher() == null;
+                Probe probe = new Probe(leaf);
+                SRE marker = new SRE(null, null);
+                markers.put(marker, leaf);
+                probe.setSRE(marker);
+                return probe;
+            }
+            SequentialExecution original = (SequentialExecution) responder;
+            SequentialExecution copy = (original instanceof AlternationExecution)
+                    ? new AlternationExecution(modifier(original)) : new SequentialExecution(modifier(original));
+            executions.add(copy);
+            for (EventResponder child : original.getChildren()) {
+                copy.addChild(copy(child));
+            }
+            return copy;
+        }
+
+        StateMachine build() {
+            if (root == null)
+                return null;
+            stateId(initial);
+            List<Integer> starts = new ArrayList<>();
+            try {
+                for (int state = 0; state < states.size(); state++) {
+                    starts.add(decide(states.get(state), new boolean[0]));
+                }
+            } catch (RuntimeException ex) {
+                // NotFlattened, or an event the interpreter fails on as well
+                return null;
+            } catch (StackOverflowError soe) {
+                return null;
+            }
+            int[] start = new int[starts.size()];
+            for (int i = 0; i < start.length; i++) {
+                start[i] = starts.get(i);
+            }
+            int[] test = new int[nodes.size()], onAccept = new int[nodes.size()], onReject = new int[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                test[i] = nodes.get(i)[0];
+                onAccept[i] = nodes.get(i)[1];
+                onReject[i] = nodes.get(i)[2];
+            }
+            int[] nextState = new int[terminals.size()], resultLeaf = new int[terminals.size()];
+            for (int i = 0; i < terminals.size(); i++) {
+                nextState[i] = terminals.get(i)[0];
+                resultLeaf[i] = terminals.get(i)[1];
+            }
+            return new StateMachine(start, test, onAccept, onReject, nextState, resultLeaf);
+        }
+
+        /**
+         * @param state  cursors to start from
+         * @param prefix answers to the first leaves the run asks
+         * @return decision node, or ~terminal, for the runs that start with these answers
+         */
+        private int decide(int[] state, boolean[] prefix) {
+            SRE result = run(state, prefix);
+            if (numAsked == prefix.length) {
+                int leaf = (result == null) ? -1 : markers.get(result);
+                return ~terminalId(stateId(capture()), leaf);
+            }
+            int node = nodes.size();
+            if (node >= MAX_NODES)
+                throw new NotFlattened();
+            nodes.add(new int[] {asked[prefix.length], 0, 0});
+            boolean[] longer = Arrays.copyOf(prefix, prefix.length + 1);
+            nodes.get(node)[2] = decide(state, longer);
+            longer = Arrays.copyOf(prefix, prefix.length + 1);
+            longer[prefix.length] = true;
+            nodes.get(node)[1] = decide(state, longer);
+            return node;
+        }
+
+        /**
+         * Queries the copy from the state. Leaves not in the script reject the event.
+         */
+        private SRE run(int[] state, boolean[] prefix) {
+            restore(state);
+            script = prefix;
+            scriptLength = prefix.length;
+            Arrays.fill(answers, (byte) 0);
+            numAsked = 0;
+            steps = 0;
+            return root.query(null);
+        }
+
+        boolean answer(int leaf) {
+            if (++steps > MAX_STEPS)
+                throw new NotFlattened();
+            if (alwaysAccepts[leaf])
+                return true;
+            if (answers[leaf] == 0) {
+                boolean accepts = numAsked < scriptLength && script[numAsked];
+                answers[leaf] = (byte) (accepts ? 1 : 2);
+                asked[numAsked++] = leaf;
+            }
+            return answers[leaf] == 1;
+        }
+
+        private int[] capture() {
+            int[] state = new int[executions.size() * 4];
+            for (int i = 0; i < executions.size(); i++) {
+                System.arraycopy(cursors(executions.get(i)), 0, state, i * 4, 4);
+            }
+            return state;
+        }
+
+        private void restore(int[] state) {
+            for (int i = 0; i < executions.size(); i++) {
+                SequentialExecution execution = executions.get(i);
+                execution.currentCursor = state[i * 4];
+                execution.exhausted = state[i * 4 + 1] != 0;
+                execution.currentChildIsZeroPlus = state[i * 4 + 2] != 0;
+                execution.currentChildIsOnePlus = state[i * 4 + 3] != 0;
+            }
+        }
+
+        private int stateId(int[] state) {
+            String key = Arrays.toString(state);
+            Integer id = stateIds.get(key);
+            if (id == null) {
+                if (states.size() >= MAX_STATES)
+                    throw new NotFlattened();
+                id = states.size();
+                states.add(state);
+                stateIds.put(key, id);
+            }
+            return id;
+        }
+
+        private int terminalId(int next, int leaf) {
+            String key = next + "," + leaf;
+            Integer id = terminalIds.get(key);
+            if (id == null) {
+                id = terminals.size();
+                terminals.add(new int[] {next, leaf});
+                terminalIds.put(key, id);
+            }
+            return id;
+        }
+
+        /**
+         * Leaf of the copy, answering from the builder's script.
+         */
+        private final class Probe extends Exchange {
+            private final int leaf;
+
+            Probe(int leaf) {
+                this.leaf = leaf;
+            }
+
+            @Override
+            public boolean accepts(Event event) {
+                return answer(leaf);
+            }
+        }
+    }
+
+    private static final class NotFlattened extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,59 @@
+package com.poco.PoCoRuntime;
+
+import java.util.ArrayList;
+
+/**
+ * A PoCo policy whose execution tree is flattened into a StateMachine when its root execution is set, so that a query
+ * follows a table from the current state instead of walking the tree. Code generated by the compiler with the
+ * "--backend statemachine" option creates subclasses of StateMachinePolicy instead of Policy.
+ *
+ * Trees the state machine cannot stand for (e.g. with map executions) are interpreted as by Policy. Either way the
+ * results are the same; the execution tree keeps its starting cursors while the state machine is used.
+ */
+public abstract class StateMachinePolicy extends Policy {
+    private StateMachine machine = null;
+    private Exchange[] leaves = null;
+    private int state = 0;
+
+    @Override
+    public void setRootExecution(AbstractExecution rootExecution) {
+        super.setRootExecution(rootExecution);
+        ArrayList<Exchange> leafList = new ArrayList<>();
+        machine = StateMachine.forExecution(rootExecution, leafList);
+        leaves = (machine == null) ? null : leafList.toArray(new Exchange[leafList.size()]);
+        state = 0;
+    }
+
+    /**
+     * @return true if queries use the state machine, false if the execution tree is interpreted
+     */
+    public boolean isFlattened() {
+        return machine != null;
+    }
+
+    /**
+     * @return number of states of the state machine, 0 if the execution tree is interpreted
+     */
+    public int getNumStates() {
+        return (machine == null) ? 0 : machine.getNumStates();
+    }
+
+    /**
+     * With the state machine, whether a query in the current state would return an SRE; the state does not change.
+     */
+    @Override
+    public boolean accepts(Event event) {
+        if (machine == null)
+            return super.accepts(event);
+        return machine.accepts(state, leaves, event);
+    }
+
+    @Override
+    public SRE query(Event event) {
+        if (machine == null)
+            return super.query(event);
+        int terminal = machine.terminal(state, leaves, event);
+        state = machine.nextState(terminal);
+        return machine.result(terminal, leaves);
+    }
+}
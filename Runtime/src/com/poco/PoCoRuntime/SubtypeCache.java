@@ -0,0 +1,69 @@
+package com.poco.PoCoRuntime;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers the subtype checks of Type+ patterns, e.g. whether com.poco.AClassLoader matches java.lang.ClassLoader+.
+ * Each (type, base type) pair is resolved once per declaring class, and the answer is cached whether it is a match, a
+ * mismatch or a class that cannot be loaded. Events therefore do not load classes once their pair has been seen.
+ *
+ * Classes are resolved through the loader of the class declaring the event's method, so that an application or
+ * plugin class is checked against the base type it sees. The answers are kept with that class (see ClassValue) and
+ * go away with it. Events built from strings have no declaring class and are resolved through the loader of the
+ * runtime. Looking up a cached answer takes no lock.
+ */
+final class SubtypeCache {
+    private enum Answer { MATCH, MISMATCH, UNRESOLVED }
+
+    private static final ClassValue<ConcurrentHashMap<String, Answer>> byDeclaringClass =
+            new ClassValue<ConcurrentHashMap<String, Answer>>() {
+                @Override
+                protected ConcurrentHashMap<String, Answer> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<String, Answer>();
+                }
+            };
+    /* answers for events without a declaring class */
+    private static final ConcurrentHashMap<String, Answer> byRuntimeLoader = new ConcurrentHashMap<String, Answer>();
+
+    private SubtypeCache() {
+    }
+
+    /**
+     * @param typeName       class name from the event, e.g. com.poco.AClassLoader
+     * @param baseName       base type of the pattern without its '+', e.g. java.lang.ClassLoader
+     * @param declaringClass class declaring the event's method, or null to use the loader of the runtime
+     * @return TRUE or FALSE if both classes could be loaded, or null if one of them could not
+     */
+    static Boolean isSubtype(String typeName, String baseName, Class<?> declaringClass) {
+        ConcurrentHashMap<String, Answer> table;
+        ClassLoader loader;
+        if (declaringClass == null) {
+            table = byRuntimeLoader;
+            loader = SubtypeCache.class.getClassLoader();
+        } else {
+            table = byDeclaringClass.get(declaringClass);
+            loader = declaringClass.getClassLoader();
+        }
+        String key = typeName + '\u0000' + baseName;
+        Answer answer = table.get(key);
+        if (answer == null) {
+            answer = resolve(typeName, baseName, loader);
+            table.putIfAbsent(key, answer);
+        }
+        if (answer == Answer.UNRESOLVED)
+            return null;
+        return (answer == Answer.MATCH) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    private static Answer resolve(String typeName, String baseName, ClassLoader loader) {
+        try {
+            Class<?> type = Class.forName(typeName, false, loader);
+            Class<?> base = Class.forName(baseName, false, loader);
+            return base.isAssignableFrom(type) ? Answer.MATCH : Answer.MISMATCH;
+        } catch (ClassNotFoundException | LinkageError e) {
+            // reported once; the pair is cached as unresolved
+            System.out.println("Cannot check " + typeName + " against " + baseName + "+: " + e);
+            return Answer.UNRESOLVED;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.poco.PoCoRuntime;
+
+/**
+ * Represents a PoCo metapolicy, one that defines policy trees. Code generated by the compiler creates subclasses of
+ * TreePolicy with constructors that build the tree (see CombinedPolicy) and hand its root to setTree.
+ */
+public abstract class TreePolicy extends Policy {
+    protected Policy tree;
+
+    public Policy getTree() {
+        return tree;
+    }
+
+    public void setTree(Policy tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public boolean accepts(Event event) {
+        return tree.accepts(event);
+    }
+
+    @Override
+    public SRE query(Event event) {
+        return tree.query(event);
+    }
+}
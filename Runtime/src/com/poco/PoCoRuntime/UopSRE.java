@@ -7,6 +7,9 @@ public class UopSRE extends SRE {
     // SRE Binary Operators: Union; Conjunction; Disjunction; Equals; Punion
     private String sreuop;
     SRE sre;
+    // value of the operation, valid while resolvedVersion matches version()
+    private SRE resolved = null;
+    private long resolvedVersion = -1;
 
     public UopSRE(String srebop, SRE sre1) {
         this.sreuop = srebop;
@@ -19,6 +22,7 @@ public class UopSRE extends SRE {
 
     public void setSRE(SRE sre) {
         this.sre = sre;
+        touch();
     }
 
     public String getSreuop() {
@@ -26,10 +30,19 @@ public class UopSRE extends SRE {
     }
 
     @Override
-    protected SRE genSRE() {
-        if (sreuop != null)
-            return SREUtil.performUOPs(sreuop, SREUtil.getBaseSRE(this.sre));
-        else
+    long version() {
+        return Math.max(super.version(), versionOf(sre));
+    }
+
+    @Override
+    protected synchronized SRE genSRE() {
+        if (sreuop == null || sre == null)
             return null;
+        long current = version();
+        if (resolvedVersion != current) {
+            resolved = SREUtil.performUOPs(sreuop, SREUtil.getBaseSRE(this.sre));
+            resolvedVersion = current;
+        }
+        return resolved;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.*;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures DummyRootPolicy throughput under contention with 1, 8 and 32 threads for the GLOBAL and PER_THREAD
+ * concurrency modes. Not a unit test; run its main method by hand.
+ */
+public class ConcurrencyBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 8, 32};
+    private static final int EVENTS_PER_THREAD = 20000;
+
+    /** Neutral policy over every action, i.e. <_ => Neutral>* */
+    private static final PolicyFactory NEUTRAL_POLICY = new PolicyFactory() {
+        public Policy newPolicy() {
+            try {
+                return PolicyFixtures.policyReturning(null, new SRE(null, null));
+            } catch (PoCoException pex) {
+                throw new RuntimeException(pex);
+            }
+        }
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        for (DummyRootPolicy.ConcurrencyMode mode : new DummyRootPolicy.ConcurrencyMode[]{
+                DummyRootPolicy.ConcurrencyMode.GLOBAL, DummyRootPolicy.ConcurrencyMode.PER_THREAD}) {
+            for (int threads : THREAD_COUNTS) {
+                run(mode, threads);
+            }
+        }
+    }
+
+    private static void run(DummyRootPolicy.ConcurrencyMode mode, int threadCount) throws InterruptedException {
+        final DummyRootPolicy root = new DummyRootPolicy(NEUTRAL_POLICY, mode);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    Event event = new Event(null, "void java.io.PrintStream.println(String)");
+                    try {
+                        start.await();
+                        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                            root.queryAction(event);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        double eventsPerMs = (double) threadCount * EVENTS_PER_THREAD / (elapsed / 1e6);
+        System.out.printf("%-10s %2d threads: %10.1f events/ms\n", mode, threadCount, eventsPerMs);
+    }
+}
@@ -0,0 +1,53 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.Event;
+import com.poco.PoCoRuntime.Match;
+
+import java.util.regex.Pattern;
+
+/**
+ * Rough comparison of Match.accepts against compiling the match string on every event, which is what
+ * Match used to do. Not a unit test; run its main method by hand.
+ */
+public class MatchBenchmark {
+    private static final String MATCH_STRING = "java.io.File|java.io.FileWriter|java.net.Socket";
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 2000000;
+
+    public static void main(String[] args) {
+        Event[] events = {
+                new Event(null, "java.io.File(String)"),
+                new Event(null, "java.net.Socket(String, int)"),
+                new Event(null, "void java.io.PrintStream.println(String)")
+        };
+        Match match = new Match(MATCH_STRING);
+
+        run("compile per event", events, null);
+        run("Match.accepts", events, match);
+    }
+
+    private static void run(String name, Event[] events, Match match) {
+        int hits = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            hits += accepts(match, events[i % events.length]) ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            hits += accepts(match, events[i % events.length]) ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-20s %8.1f ns/event (%d hits)\n", name, (double) elapsed / ITERATIONS, hits);
+    }
+
+    private static boolean accepts(Match match, Event event) {
+        if (match != null) {
+            return match.accepts(event);
+        }
+        for (String alternative : MATCH_STRING.split("\\|")) {
+            if (Pattern.compile(alternative).matcher(event.getSignature()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
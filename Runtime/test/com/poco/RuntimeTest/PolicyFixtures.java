@@ -0,0 +1,42 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.*;
+
+/**
+ * Small policies built by hand for the runtime tests and benchmarks.
+ */
+final class PolicyFixtures {
+    private PolicyFixtures() {
+    }
+
+    /**
+     * @param matched method the exchange matches, or null for _
+     * @return execution <Action(`matched') => returnSRE>modifier
+     */
+    static SequentialExecution execution(String modifier, String matched, SRE returnSRE) throws PoCoException {
+        SequentialExecution exec = new SequentialExecution(modifier);
+        Exchange exch = new Exchange();
+        if (matched != null) {
+            Matchs matchs = new Matchs();
+            Match match = new Match();
+            match.setMatchString(matched);
+            matchs.addChild(match);
+            exch.addMatcher(matchs);
+        }
+        exch.setSRE(returnSRE);
+        exec.addChild(exch);
+        return exec;
+    }
+
+    /**
+     * @param matched method the exchange matches, or null for _
+     * @return policy <Action(`matched') => returnSRE>*
+     */
+    static Policy policyReturning(String matched, SRE returnSRE) throws PoCoException {
+        SequentialExecution rootExec = new SequentialExecution("none");
+        rootExec.addChild(execution("*", matched, returnSRE));
+        Policy policy = new Policy() { };
+        policy.setRootExecution(rootExec);
+        return policy;
+    }
+}
@@ -0,0 +1,162 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.*;
+import org.junit.Test;
+
+import static com.poco.RuntimeTest.PolicyFixtures.policyReturning;
+import static org.junit.Assert.*;
+
+public class TestCombinedPolicy {
+    private static Event deleteEvent() {
+        return new Event("Action", "boolean java.io.File.delete()");
+    }
+
+    @Test
+    public void unionCombinesChildResults() throws PoCoException {
+        CombinedPolicy union = new CombinedPolicy("Union",
+                policyReturning("java.io.File.delete()", new SRE(null, "java.io.File.delete()")),
+                policyReturning("java.io.File.delete()", new SRE(null, null)));
+        SRE result = union.query(deleteEvent());
+        assertNotNull(result);
+        assertEquals("java.io.File.delete()", result.getNegativeRE());
+        assertEquals(null, result.getPositiveRE());
+    }
+
+    @Test
+    public void childThatDoesNotAcceptIsNeutral() throws PoCoException {
+        CombinedPolicy union = new CombinedPolicy("Union",
+                policyReturning("java.net.Socket.<init>()", new SRE(null, "java.net.Socket.<init>()")),
+                policyReturning("java.io.File.delete()", new SRE(null, "java.io.File.delete()")));
+        assertEquals("java.io.File.delete()", union.query(deleteEvent()).getNegativeRE());
+
+        CombinedPolicy none = new CombinedPolicy("Union",
+                policyReturning("java.net.Socket.<init>()", new SRE(null, null)));
+        assertNull(none.query(deleteEvent()));
+    }
+
+    @Test
+    public void denyAllPunionSkipsRemainingChildren() throws PoCoException {
+        for (boolean parallel : new boolean[] {false, true}) {
+            Policy[] children = new Policy[CombinedPolicy.PARALLEL_THRESHOLD];
+            children[0] = policyReturning("java.io.File.delete()", new SRE(null, "%"));
+            for (int i = 1; i < children.length; i++) {
+                children[i] = policyReturning("java.io.File.delete()", new SRE("java.io.File.delete()", null));
+            }
+            CombinedPolicy punion = new CombinedPolicy("Punion", children);
+            punion.setParallel(parallel);
+            punion.setShortCircuit(true);
+            SRE result = punion.query(deleteEvent());
+            assertNotNull(result);
+            assertNull(result.getPositiveRE());
+            assertEquals(1, punion.getEvents());
+            assertEquals(punion.getLastSavedQueries(), punion.getSavedQueries());
+            assertEquals(children.length, punion.getChildQueries() + punion.getSavedQueries());
+            // in parallel every child sees the event, whatever the threads' timing
+            assertEquals(parallel ? 0 : children.length - 1, punion.getSavedQueries());
+        }
+    }
+
+    @Test
+    public void everyChildSeesTheEventByDefault() throws PoCoException {
+        for (boolean parallel : new boolean[] {false, true}) {
+            Policy[] children = new Policy[CombinedPolicy.PARALLEL_THRESHOLD];
+            children[0] = policyReturning("java.io.File.delete()", new SRE(null, "%"));
+            for (int i = 1; i < children.length; i++) {
+                children[i] = policyReturning("java.io.File.delete()", new SRE("java.io.File.delete()", null));
+            }
+            CombinedPolicy punion = new CombinedPolicy("Punion", children);
+            punion.setParallel(parallel);
+            punion.query(deleteEvent());
+            assertEquals(children.length, punion.getChildQueries());
+            assertEquals(0, punion.getSavedQueries());
+        }
+    }
+
+    @Test
+    public void shortCircuitKeepsTheResult() throws PoCoException {
+        String[] operators = {"Union", "Punion", "Disjunction", "Conjunction"};
+        SRE[][] childResults = {
+                {new SRE("%", "java.io.File.delete()"), new SRE(null, "java.io.File.delete()")},
+                {new SRE(null, null), new SRE("java.io.File.delete()", null)},
+                {new SRE("%", "%"), new SRE("java.io.File.delete()", null)},
+        };
+        for (String operator : operators) {
+            for (SRE[] results : childResults) {
+                CombinedPolicy full = new CombinedPolicy(operator,
+                        policyReturning("java.io.File.delete()", results[0]),
+                        policyReturning("java.io.File.delete()", results[1]));
+                CombinedPolicy shortCircuit = new CombinedPolicy(operator,
+                        policyReturning("java.io.File.delete()", results[0]),
+                        policyReturning("java.io.File.delete()", results[1]));
+                shortCircuit.setShortCircuit(true);
+                SRE expected = full.query(deleteEvent());
+                SRE actual = shortCircuit.query(deleteEvent());
+                assertEquals(operator, expected.getPositiveRE(), actual.getPositiveRE());
+                assertEquals(operator, expected.getNegativeRE(), actual.getNegativeRE());
+            }
+        }
+    }
+
+    @Test
+    public void precombinedTreeGivesFoldedResults() throws PoCoException {
+        String[] operators = {"Union", "Punion", "Disjunction", "Conjunction"};
+        Event[] events = {deleteEvent(), new Event("Action", "void java.net.Socket.close()")};
+        for (String operator : operators) {
+            // executions end on events they do not match, so each event gets new trees
+            for (Event event : events) {
+                CombinedPolicy[] trees = new CombinedPolicy[2];
+                for (int t = 0; t < trees.length; t++) {
+                    CombinedPolicy inner = new CombinedPolicy("Punion",
+                            policyReturning("java.io.File.delete()", new SRE(null, "java.io.File.delete()")),
+                            policyReturning("java.net.Socket.close()", new SRE("java.net.Socket.close()", null)));
+                    trees[t] = new CombinedPolicy(operator,
+                            policyReturning("java.io.File.delete()", new SRE("java.io.File.delete()", null)),
+                            inner,
+                            policyReturning("java.net.Socket.close()", new SRE(null, null)));
+                    if (t == 1) {
+                        assertTrue(inner.precombine());
+                        assertTrue(trees[t].precombine());
+                    }
+                }
+                assertFalse(trees[0].isPrecombined());
+                SRE expected = trees[0].query(event);
+                SRE actual = trees[1].query(event);
+                assertEquals(operator, expected == null, actual == null);
+                if (expected != null) {
+                    assertEquals(operator, expected.getPositiveRE(), actual.getPositiveRE());
+                    assertEquals(operator, expected.getNegativeRE(), actual.getNegativeRE());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void computedResultsAreNotPrecombined() throws PoCoException {
+        CombinedPolicy union = new CombinedPolicy("Union",
+                policyReturning("java.io.File.delete()", new BopSRE("Union", new SRE("a()", null), new SRE("b()", null))),
+                policyReturning("java.io.File.delete()", new SRE(null, null)));
+        assertFalse(union.precombine());
+        assertNotNull(union.query(deleteEvent()));
+    }
+
+    @Test
+    public void parallelQueriesGiveSequentialResults() throws PoCoException {
+        Policy[] sequentialChildren = new Policy[CombinedPolicy.PARALLEL_THRESHOLD + 2];
+        Policy[] parallelChildren = new Policy[sequentialChildren.length];
+        for (int i = 0; i < sequentialChildren.length; i++) {
+            String denied = (i % 2 == 0) ? "java.io.File.delete()" : null;
+            sequentialChildren[i] = policyReturning("java.io.File.delete()", new SRE(null, denied));
+            parallelChildren[i] = policyReturning("java.io.File.delete()", new SRE(null, denied));
+        }
+        CombinedPolicy sequential = new CombinedPolicy("Conjunction", sequentialChildren);
+        sequential.setParallel(false);
+        CombinedPolicy parallel = new CombinedPolicy("Conjunction", parallelChildren);
+        assertTrue(parallel.isParallel());
+        for (int i = 0; i < 3; i++) {
+            SRE expected = sequential.query(deleteEvent());
+            SRE actual = parallel.query(deleteEvent());
+            assertEquals(expected.getPositiveRE(), actual.getPositiveRE());
+            assertEquals(expected.getNegativeRE(), actual.getNegativeRE());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestDispatchIndex {
+    private Exchange fileExchange;
+    private Exchange resultExchange;
+    private Exchange wildcardExchange;
+    private Policy policy;
+
+    @Before
+    public void setup() throws PoCoException {
+        SequentialExecution rootExec = new SequentialExecution("none");
+
+        fileExchange = new Exchange();
+        Matchs matchs = new Matchs("||");
+        matchs.addChild(new Match("java.io.File"));
+        matchs.addChild(new Match("java.io.FileWriter"));
+        fileExchange.addMatcher(matchs);
+
+        resultExchange = new Exchange();
+        resultExchange.addMatcher(new Match("int com.poco.Test.foo", false, true, false, "1"));
+
+        wildcardExchange = new Exchange();
+
+        rootExec.addChild(fileExchange);
+        rootExec.addChild(resultExchange);
+        rootExec.addChild(wildcardExchange);
+
+        policy = new Policy() { };
+        policy.setRootExecution(rootExec);
+    }
+
+    @Test
+    public void indexesEveryExchangeLeaf() {
+        assertEquals(3, policy.getDispatchIndex().getNumLeaves());
+    }
+
+    @Test
+    public void signatureOnlyMatchesAreSettledByIndex() {
+        Event fileEvent = new Event(null, "java.io.File(String)");
+        Event printEvent = new Event(null, "void java.io.PrintStream.println(String)");
+
+        assertTrue(fileExchange.accepts(fileEvent));
+        assertFalse(fileExchange.accepts(printEvent));
+        // Cached verdicts give the same answers the second time around
+        assertTrue(fileExchange.accepts(new Event(null, "java.io.File(String)")));
+        assertFalse(fileExchange.accepts(new Event(null, "void java.io.PrintStream.println(String)")));
+    }
+
+    @Test
+    public void resultMatchesAreStillEvaluatedPerEvent() {
+        Event withoutResult = new Event("Result", "int com.poco.Test.foo(int)");
+        assertFalse(resultExchange.accepts(withoutResult));
+
+        Event withResult = new Event("Result", "int com.poco.Test.foo(int)");
+        withResult.setResult(1);
+        assertTrue(resultExchange.accepts(withResult));
+    }
+
+    @Test
+    public void wildcardExchangeAcceptsEverything() {
+        assertTrue(wildcardExchange.accepts(new Event(null, "void java.io.PrintStream.println(String)")));
+    }
+
+    @Test
+    public void keepsOnlyRecentSignatures() {
+        for (int i = 0; i < 2 * DispatchIndex.SIGNATURE_CACHE_SIZE; i++) {
+            fileExchange.accepts(new Event(null, "void com.poco.Test.method" + i + "()"));
+        }
+        assertEquals(DispatchIndex.SIGNATURE_CACHE_SIZE, policy.getDispatchIndex().getNumCachedSignatures());
+
+        // evicted signatures are evaluated again
+        assertFalse(fileExchange.accepts(new Event(null, "void com.poco.Test.method0()")));
+        assertTrue(fileExchange.accepts(new Event(null, "java.io.File(String)")));
+    }
+}
@@ -0,0 +1,29 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestDummyRootPolicy {
+    @Test
+    public void objectValueReplacesResult() throws PoCoException {
+        DummyRootPolicy root = new DummyRootPolicy(PolicyFixtures.policyReturning(null, new SRE("#int{42}", null)));
+        for (int i = 0; i < 2; i++) {
+            Event event = new Event("Result", "int com.poco.Test.foo(int)");
+            event.setResult(7);
+            root.queryAction(event);
+            assertEquals(42, event.getResult());
+        }
+    }
+
+    @Test
+    public void neutralResultLeavesEventAlone() throws PoCoException {
+        DummyRootPolicy root = new DummyRootPolicy(PolicyFixtures.policyReturning(null, new SRE(null, null)));
+        Event event = new Event("Result", "int com.poco.Test.foo(int)");
+        event.setResult(7);
+        root.queryAction(event);
+        assertEquals(7, event.getResult());
+        assertTrue(root.getPromotedEvents().empty());
+    }
+}
@@ -0,0 +1,51 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.LruCache;
+import com.poco.PoCoRuntime.SRE;
+import com.poco.PoCoRuntime.SREUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestLruCache {
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        LruCache<String, Integer> cache = new LruCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        LruCache<String, Integer> cache = new LruCache<>(4);
+        cache.get("a");
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void repeatedSreOperationIsServedFromCache() {
+        SRE sre1 = new SRE("java\\.io\\.File", "java\\.net\\.Socket");
+        SRE sre2 = new SRE("java\\.io\\.FileWriter", "java\\.net\\.URL");
+
+        SRE first = SREUtil.performBOPs("Union", sre1, sre2);
+        long hits = SREUtil.getOpCache().getHits();
+        SRE second = SREUtil.performBOPs("Union", sre1, sre2);
+
+        assertEquals(hits + 1, SREUtil.getOpCache().getHits());
+        assertNotSame(first, second);
+        assertEquals(first.getPositiveRE(), second.getPositiveRE());
+        assertEquals(first.getNegativeRE(), second.getNegativeRE());
+    }
+}
@@ -1,13 +1,20 @@
 package com.poco.RuntimeTest;
 
 
+import com.poco.PoCoRuntime.DataWH;
 import com.poco.PoCoRuntime.Event;
 import com.poco.PoCoRuntime.Match;
 import com.poco.PoCoRuntime.Matchs;
 import com.poco.PoCoRuntime.PoCoException;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.runtime.reflect.Factory;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+
 
 import static org.junit.Assert.*;
 
@@ -105,4 +112,66 @@ public class TestMatchs {
 
         assertFalse(matchs.accepts(neitherEvent));
     }
+
+    @Test
+    public void subtypeMatchAcceptsSubclassConstructors() {
+        Match match = new Match("java.lang.ClassLoader+");
+
+        assertTrue(match.accepts(new Event("Action", "java.net.URLClassLoader(java.net.URL[])")));
+        assertFalse(match.accepts(new Event("Action", "java.io.File(java.lang.String)")));
+        // answered from the cache the second time
+        assertTrue(match.accepts(new Event("Action", "java.net.URLClassLoader(java.net.URL[])")));
+    }
+
+    @Test
+    public void matchesSimpleReturnTypesOfWovenEvents() {
+        // the signature of a woven call, as AspectJ prints it: "String java.lang.String.trim()"
+        Factory factory = new Factory("TestMatchs.java", TestMatchs.class);
+        JoinPoint.StaticPart staticPart = factory.makeSJP(JoinPoint.METHOD_CALL, factory.makeMethodSig(
+                Modifier.PUBLIC, "trim", String.class, new Class<?>[0], new String[0], new Class<?>[0], String.class), 1);
+        Event event = Event.forStaticPart(staticPart);
+
+        assertEquals("String", event.getReturnType());
+        assertTrue(new Match("String java.lang.String.trim").accepts(event));
+        assertFalse(new Match("int java.lang.String.trim").accepts(event));
+    }
+
+    @Test
+    public void followsRebindingsOfClosureVariables() {
+        Event delete = new Event("Action", "boolean java.io.File.delete()");
+        Event close = new Event("Action", "void java.net.Socket.close()");
+        Match match = new Match("$$TestMatchsTarget$$");
+        try {
+            DataWH.closure.put("TestMatchsTarget", "java.io.File.delete");
+            assertTrue(match.accepts(delete));
+            assertFalse(match.accepts(close));
+
+            // the alternatives compiled for the old value must not be reused
+            DataWH.closure.put("TestMatchsTarget", "java.net.Socket.close");
+            assertFalse(match.accepts(delete));
+            assertTrue(match.accepts(close));
+        } finally {
+            DataWH.closure.remove("TestMatchsTarget");
+        }
+    }
+
+    @Test
+    public void resolvesSubtypesThroughTheEventsClass() {
+        // e.g. a container whose context class loader cannot see the application's classes
+        Factory factory = new Factory("TestMatchs.java", TestMatchs.class);
+        JoinPoint.StaticPart staticPart = factory.makeSJP(JoinPoint.CONSTRUCTOR_CALL, factory.makeConstructorSig(
+                Modifier.PUBLIC, PluginLoader.class, new Class<?>[0], new String[0], new Class<?>[0]), 1);
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[0], null));
+        try {
+            Event event = Event.forStaticPart(staticPart);
+            assertTrue(event.getSignature(), new Match("java.lang.ClassLoader+").accepts(event));
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+    }
+}
+
+class PluginLoader extends ClassLoader {
 }
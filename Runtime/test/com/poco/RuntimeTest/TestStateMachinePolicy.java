@@ -0,0 +1,103 @@
+package com.poco.RuntimeTest;
+
+import com.poco.PoCoRuntime.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestStateMachinePolicy {
+    private static final String[] METHODS = {"java.io.File.delete()", "java.net.Socket.close()", "java.io.File.exists()"};
+    private static final Event[] EVENTS = {
+            new Event("Action", "boolean java.io.File.delete()"),
+            new Event("Action", "void java.net.Socket.close()"),
+            new Event("Action", "boolean java.io.File.exists()"),
+    };
+
+    /**
+     * @return execution <Action(`METHODS[method]') => -`METHODS[method]'>modifier
+     */
+    private static SequentialExecution exchange(int method, String modifier) throws PoCoException {
+        return PolicyFixtures.execution(modifier, METHODS[method], new SRE(null, METHODS[method]));
+    }
+
+    /**
+     * @return root executions of: <0> <1>* <2>, (<0> | <1>)* <2>+ and (<0> <1>*)* <2>
+     */
+    private static AbstractExecution rootExecution(int shape) throws PoCoException {
+        SequentialExecution rootExec = new SequentialExecution("none");
+        if (shape == 0) {
+            rootExec.addChild(exchange(0, "none"));
+            rootExec.addChild(exchange(1, "*"));
+            rootExec.addChild(exchange(2, "none"));
+        } else if (shape == 1) {
+            AlternationExecution alterExec = new AlternationExecution("*");
+            alterExec.addChild(exchange(0, "none"));
+            alterExec.addChild(exchange(1, "none"));
+            rootExec.addChild(alterExec);
+            rootExec.addChild(exchange(2, "+"));
+        } else {
+            SequentialExecution groupedExec = new SequentialExecution("*");
+            groupedExec.addChild(exchange(0, "none"));
+            groupedExec.addChild(exchange(1, "*"));
+            rootExec.addChild(groupedExec);
+            rootExec.addChild(exchange(2, "none"));
+        }
+        rootExec.getCurrentChildModifier();
+        return rootExec;
+    }
+
+    @Test
+    public void stateMachineGivesInterpretedResults() throws PoCoException {
+        Random random = new Random(24);
+        for (int shape = 0; shape < 3; shape++) {
+            for (int run = 0; run < 50; run++) {
+                Policy interpreted = new Policy() { };
+                interpreted.setRootExecution(rootExecution(shape));
+                StateMachinePolicy flattened = new StateMachinePolicy() { };
+                flattened.setRootExecution(rootExecution(shape));
+                assertTrue(flattened.isFlattened());
+                for (int i = 0; i < 8; i++) {
+                    Event event = EVENTS[random.nextInt(EVENTS.length)];
+                    SRE expected = interpreted.query(event);
+                    SRE actual = flattened.query(event);
+                    assertEquals("shape " + shape, String.valueOf(expected), String.valueOf(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void acceptsFollowsTheCurrentState() throws PoCoException {
+        Random random = new Random(7);
+        for (int shape = 0; shape < 3; shape++) {
+            Policy interpreted = new Policy() { };
+            interpreted.setRootExecution(rootExecution(shape));
+            StateMachinePolicy flattened = new StateMachinePolicy() { };
+            flattened.setRootExecution(rootExecution(shape));
+            for (int i = 0; i < 50; i++) {
+                Event event = EVENTS[random.nextInt(EVENTS.length)];
+                boolean accepts = flattened.accepts(event);
+                assertEquals("shape " + shape, accepts, flattened.accepts(event));
+                assertEquals("shape " + shape, interpreted.query(event) != null, accepts);
+                flattened.query(event);
+            }
+        }
+    }
+
+    @Test
+    public void mapExecutionsAreInterpreted() throws PoCoException {
+        SequentialExecution rootExec = new SequentialExecution("none");
+        MapExecution mapExec = new MapExecution("*");
+        mapExec.setOperator("Union");
+        mapExec.setMatchSre(new SRE(null, null));
+        mapExec.addChild(exchange(0, "*"));
+        rootExec.addChild(mapExec);
+        StateMachinePolicy policy = new StateMachinePolicy() { };
+        policy.setRootExecution(rootExec);
+        assertFalse(policy.isFlattened());
+        assertEquals(0, policy.getNumStates());
+        assertNotNull(policy.query(EVENTS[0]));
+    }
+}
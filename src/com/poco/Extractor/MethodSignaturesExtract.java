@@ -7,38 +7,107 @@ import org.objectweb.asm.ClassReader;
 import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
  * Extracts the signatures of declared methods in supplied file (either a .class or .jar file)
+ *
+ * Jar files are scanned in parallel: their class entries are split between the tasks of a fork-join pool, each of
+ * which collects the signatures of its own entries. The results are merged in entry order, so the signatures come
+ * out in the same order as a sequential scan would give.
+ *
+ * scanAll can hand the signatures of many files to a SignatureSink as each file is done.
  */
 public class MethodSignaturesExtract {
+    /** class entries a single scanning task reads before splitting its share of a jar */
+    private static final int ENTRIES_PER_TASK = 64;
+    /** method bodies and debug info are not needed for signatures */
+    private static final int READER_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
     private final Path toScan;
     private LinkedHashSet<String> methodSignatures = new LinkedHashSet<>();
 
     public MethodSignaturesExtract(Path scanFile) {
         this.toScan = scanFile;
+        this.methodSignatures = pool.invoke(new FileScan(scanFile, null));
+    }
+
+    public LinkedHashSet<String> getMethodSignatures() {
+        return new LinkedHashSet<>(methodSignatures);
+    }
+
+    /**
+     * Scans several class or jar files at once.
+     *
+     * @param scanFiles files to scan
+     * @return signatures of all files, in the order of scanFiles
+     */
+    public static LinkedHashSet<String> scanAll(Path[] scanFiles) {
+        return scanAll(scanFiles, null);
+    }
 
-        // Scan for method signatures
-        String fileName = toScan.getFileName().toString();
-        String extension = fileName.substring(fileName.lastIndexOf('.'));
+    /**
+     * Scans several class or jar files at once, taking the signatures of files that have not changed from an index.
+     *
+     * @param scanFiles files to scan
+     * @param index     signatures of earlier scans, updated with the files scanned now; may be null
+     * @return signatures of all files, in the order of scanFiles
+     */
+    public static LinkedHashSet<String> scanAll(Path[] scanFiles, SignatureIndex index) {
+        final LinkedHashSet<String> signatures = new LinkedHashSet<>();
+        scanAll(scanFiles, index, new SignatureSink() {
+            @Override
+            public void accept(String signature) {
+                signatures.add(signature);
+            }
+        });
+        return signatures;
+    }
 
-        if (extension.equals(".jar")) {
-            this.scanJARFile();
-        } else {
-            this.scanFile();
+    /**
+     * Scans several class or jar files at once and passes their signatures on in the order of scanFiles. As many
+     * files are scanned at a time as the pool has threads. A signature already passed on for an earlier file is
+     * skipped.
+     *
+     * @param scanFiles files to scan
+     * @param index     signatures of earlier scans, updated with the files scanned now; may be null
+     * @param sink      receives the signatures
+     */
+    public static void scanAll(Path[] scanFiles, SignatureIndex index, SignatureSink sink) {
+        int window = pool.getParallelism();
+        List<ForkJoinTask<LinkedHashSet<String>>> scans = new ArrayList<>();
+        for (int i = 0; i < scanFiles.length; i++)
+            scans.add(null);
+        HashSet<String> seen = new HashSet<>();
+        int submitted = 0;
+        for (int i = 0; i < scanFiles.length; i++) {
+            while (submitted < scanFiles.length && submitted < i + window) {
+                scans.set(submitted, pool.submit(new FileScan(scanFiles[submitted], index)));
+                submitted++;
+            }
+            for (String signature : scans.get(i).join()) {
+                if (seen.add(signature))
+                    sink.accept(signature);
+            }
+            scans.set(i, null);
         }
     }
 
-    public LinkedHashSet<String> getMethodSignatures() {
-        return new LinkedHashSet<>(methodSignatures);
+    private static boolean isJar(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.lastIndexOf('.') >= 0 && fileName.substring(fileName.lastIndexOf('.')).equals(".jar");
     }
 
-    private void scanFile() {
+    private static void scanFile(Path toScan, LinkedHashSet<String> methodSignatures) {
         try (FileInputStream classFile = new FileInputStream(toScan.toFile())) {
             ClassReader reader = new ClassReader(classFile);
-            reader.accept(new ClassInspector(methodSignatures), 0);
+            reader.accept(new ClassInspector(methodSignatures), READER_FLAGS);
         } catch (Exception e) {
             System.out.format("ERROR: Problem reading file \"%s\"\n", toScan.toAbsolutePath().toString());
             System.out.println(e.getMessage());
@@ -47,7 +116,7 @@ public class MethodSignaturesExtract {
         }
     }
 
-    private void scanJARFile() {
+    private static LinkedHashSet<String> scanJARFile(Path toScan) {
         try (JarFile jarFile = new JarFile(toScan.toFile())) {
             Enumeration<JarEntry> entries = jarFile.entries();
             ArrayList<JarEntry> jarClassFiles = new ArrayList<>();
@@ -69,15 +138,85 @@ public class MethodSignaturesExtract {
                 }
             }
 
-            // Parse each .class file
-            for (JarEntry classFile : jarClassFiles) {
-                ClassReader reader = new ClassReader(jarFile.getInputStream(classFile));
-                reader.accept(new ClassInspector(methodSignatures), 0);
-            }
+            // Parse the .class files in parallel; the jar stays open until all of them are read
+            return new EntriesScan(toScan, jarFile, jarClassFiles, 0, jarClassFiles.size()).invoke();
         } catch (IOException e) {
             System.out.printf("\n\nERROR reading JAR file \"%s\"", toScan.toAbsolutePath().toString());
             System.out.println(e.getMessage());
             e.printStackTrace();
         }
+        return new LinkedHashSet<>();
+    }
+
+    private static class FileScan extends RecursiveTask<LinkedHashSet<String>> {
+        private static final long serialVersionUID = 1L;
+        private final Path file;
+        private final SignatureIndex index;
+
+        FileScan(Path file, SignatureIndex index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        @Override
+        protected LinkedHashSet<String> compute() {
+            LinkedHashSet<String> signatures = (index == null) ? null : index.lookup(file);
+            if (signatures != null)
+                return signatures;
+            if (isJar(file)) {
+                signatures = scanJARFile(file);
+            } else {
+                signatures = new LinkedHashSet<>();
+                scanFile(file, signatures);
+            }
+            if (index != null)
+                index.update(file, signatures);
+            return signatures;
+        }
+    }
+
+    /**
+     * Scans the class entries [from, to) of a jar, splitting the range in halves until it is small enough.
+     */
+    private static class EntriesScan extends RecursiveTask<LinkedHashSet<String>> {
+        private static final long serialVersionUID = 1L;
+        private final Path jarPath;
+        private final JarFile jarFile;
+        private final List<JarEntry> entries;
+        private final int from;
+        private final int to;
+
+        EntriesScan(Path jarPath, JarFile jarFile, List<JarEntry> entries, int from, int to) {
+            this.jarPath = jarPath;
+            this.jarFile = jarFile;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LinkedHashSet<String> compute() {
+            if (to - from > ENTRIES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                EntriesScan second = new EntriesScan(jarPath, jarFile, entries, middle, to);
+                second.fork();
+                LinkedHashSet<String> signatures = new EntriesScan(jarPath, jarFile, entries, from, middle).compute();
+                signatures.addAll(second.join());
+                return signatures;
+            }
+            LinkedHashSet<String> signatures = new LinkedHashSet<>();
+            for (int i = from; i < to; i++) {
+                try (InputStream classFile = jarFile.getInputStream(entries.get(i))) {
+                    ClassReader reader = new ClassReader(classFile);
+                    reader.accept(new ClassInspector(signatures), READER_FLAGS);
+                } catch (IOException e) {
+                    System.out.printf("\n\nERROR reading \"%s\" in JAR file \"%s\"", entries.get(i).getName(),
+                            jarPath.toAbsolutePath().toString());
+                    System.out.println(e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+            return signatures;
+        }
     }
 }
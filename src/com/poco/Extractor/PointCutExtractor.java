@@ -29,6 +29,8 @@ public class PointCutExtractor extends PoCoParserBaseVisitor<Void> {
     private boolean isResult = false;
     private boolean isLHS = false;
     private String policyName = "";
+    //declaring type of a Type+ pattern (e.g., java.lang.ClassLoader+), prefixed to the function that follows it
+    private String subtypePrefix = "";
 
     //update return value case can only happen when LHS of => is result and RHS of => is object
     //so now if LHS is result then push the the method onto resultMethodName stack
@@ -94,11 +96,11 @@ public class PointCutExtractor extends PoCoParserBaseVisitor<Void> {
                 if (ctx.function().INIT() != null) {
                     // delete * since there is no return val for new
                     if (pointcutStr == null) {
-                        pointcutStr = ctx.function().fxnname().getText() + "new";
+                        pointcutStr = subtypePrefix + ctx.function().fxnname().getText() + "new";
                     } else {
                         if (pointcutStr.length() > 1 && pointcutStr.startsWith("*"))
                             pointcutStr = pointcutStr.substring(1, pointcutStr.length()).trim();
-                        pointcutStr += ctx.function().fxnname().getText() + "new";
+                        pointcutStr += subtypePrefix + ctx.function().fxnname().getText() + "new";
                     }
                     if (ctx.function().arglist() != null) {
                         if (ctx.function().arglist().getText().equals("%")) {
@@ -114,7 +116,7 @@ public class PointCutExtractor extends PoCoParserBaseVisitor<Void> {
                         add2NodesNodes4Result(pointcutStr);
                     }
                 } else {
-                    String funStr = ctx.function().fxnname().getText().trim();
+                    String funStr = (subtypePrefix + ctx.function().fxnname().getText()).trim();
                     if (funStr.split(" ").length == 2)
                         pointcutStr = funStr;
                     else
@@ -140,6 +142,12 @@ public class PointCutExtractor extends PoCoParserBaseVisitor<Void> {
             } else if (ctx.AT() != null) {
                 varBind4thisPC.add(policyName + ctx.id().getText());
                 visitChildren(ctx);
+            } else if (isSubtypeFunction(ctx)) {
+                //e.g., java.lang.ClassLoader+.<init>(%) becomes call(java.lang.ClassLoader+.new(..)), so that
+                //AspectJ only weaves calls on the type and its subtypes
+                subtypePrefix = ctx.re(0).re(0).getText() + "+";
+                visitRe(ctx.re(1));
+                subtypePrefix = "";
             } else {
                 visitChildren(ctx);
             }
@@ -344,6 +352,17 @@ public class PointCutExtractor extends PoCoParserBaseVisitor<Void> {
         varBind4thisPC = new HashSet<String>();
     }
 
+    /**
+     * @return true if ctx is a Type+ pattern followed by a method or constructor, e.g. java.lang.ClassLoader+.<init>(%)
+     */
+    private static boolean isSubtypeFunction(PoCoParser.ReContext ctx) {
+        if (ctx.rebop() == null || ctx.rebop().BAR() != null || ctx.re().size() != 2)
+            return false;
+        PoCoParser.ReContext typeRe = ctx.re(0);
+        return typeRe.reuop() != null && typeRe.reuop().PLUS() != null && typeRe.re().size() == 1
+                && ctx.re(1).function() != null && ctx.re(1).function().fxnname().getText().startsWith(".");
+    }
+
     public String getFunctionName(String str) {
         int leftPara = str.indexOf("(");
         int righPara = str.indexOf(")");
@@ -0,0 +1,101 @@
+package com.poco.Extractor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of method signatures, one per line (the _allmethods.txt file of a policy). Iterating over it reads the file
+ * again each time, line by line. An iterator closes the file when it reaches the end; one that is dropped early
+ * keeps it open until it is collected, so callers that may stop early should copy what they need first.
+ */
+public class SignatureFile implements Iterable<String> {
+    private final Path path;
+
+    public SignatureFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return sink that writes signatures to the file through a buffer; close it when done
+     */
+    public Writer writer() throws IOException {
+        return new Writer(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        final BufferedReader reader;
+        try {
+            reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read signature file " + path, e);
+        }
+        return new Iterator<String>() {
+            private String next = readLine();
+
+            private String readLine() {
+                try {
+                    String line = reader.readLine();
+                    if (line == null)
+                        reader.close();
+                    return line;
+                } catch (IOException e) {
+                    throw new RuntimeException("Cannot read signature file " + path, e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                String current = next;
+                next = readLine();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public static class Writer implements SignatureSink, Closeable {
+        private final BufferedWriter out;
+
+        private Writer(BufferedWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void accept(String signature) {
+            try {
+                out.write(signature);
+                out.write('\n');
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
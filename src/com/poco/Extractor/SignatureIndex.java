@@ -0,0 +1,197 @@
+package com.poco.Extractor;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of the method signatures of scanned class and jar files, kept between compiler runs. A file is only
+ * parsed again when its size, modification time or CRC32 checksum differs from the one it was indexed with.
+ *
+ * The index is a binary file: a header (magic, format version, entry count), then for every indexed file its
+ * absolute path, size, modification time, checksum and signatures. Signatures of one file share the package and class
+ * prefix of the previous signature, so only the changed suffix is stored.
+ */
+public class SignatureIndex {
+    public static final String FILE_NAME = "poco_signatures.idx";
+
+    private static final int MAGIC = 0x50435349; // "PCSI"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path indexFile;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean changed = false;
+
+    private SignatureIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Reads the index, or starts an empty one if the file is missing or cannot be read.
+     *
+     * @param indexFile location of the index
+     * @return the index
+     */
+    public static SignatureIndex load(Path indexFile) {
+        SignatureIndex index = new SignatureIndex(indexFile);
+        if (!Files.isRegularFile(indexFile))
+            return index;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return index;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = Entry.read(in);
+                index.entries.put(entry.path, entry);
+            }
+        } catch (IOException e) {
+            System.out.printf("WARNING: ignoring unreadable signature index \"%s\" (%s)\n", indexFile, e.getMessage());
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    /**
+     * @param file class or jar file
+     * @return signatures indexed for the file, or null if it is not indexed or has changed since
+     */
+    public LinkedHashSet<String> lookup(Path file) {
+        Entry entry = entries.get(key(file));
+        if (entry == null)
+            return null;
+        try {
+            if (entry.size != Files.size(file) || entry.modified != Files.getLastModifiedTime(file).toMillis())
+                return null;
+            if (entry.checksum != checksum(file))
+                return null;
+        } catch (IOException e) {
+            return null;
+        }
+        return new LinkedHashSet<>(entry.signatures);
+    }
+
+    /**
+     * Records the signatures just scanned from a file.
+     */
+    public void update(Path file, LinkedHashSet<String> signatures) {
+        try {
+            Entry entry = new Entry(key(file), Files.size(file), Files.getLastModifiedTime(file).toMillis(),
+                    checksum(file), new ArrayList<>(signatures));
+            entries.put(entry.path, entry);
+            changed = true;
+        } catch (IOException e) {
+            // not indexed; the file is scanned again next time
+        }
+    }
+
+    /**
+     * Writes the index if it has changed, leaving out files that no longer exist. The file is replaced atomically,
+     * so an interrupted run leaves the previous index intact.
+     */
+    public void save() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!new File(entry.getKey()).exists()) {
+                entries.remove(entry.getKey());
+                changed = true;
+            }
+        }
+        if (!changed)
+            return;
+        Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                List<Entry> snapshot = new ArrayList<>(entries.values());
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(snapshot.size());
+                for (Entry entry : snapshot) {
+                    entry.write(out);
+                }
+            }
+            Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            System.out.printf("WARNING: could not write signature index \"%s\" (%s)\n", indexFile, e.getMessage());
+        }
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final long checksum;
+        final List<String> signatures;
+
+        Entry(String path, long size, long modified, long checksum, List<String> signatures) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+            this.signatures = signatures;
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long modified = in.readLong();
+            long checksum = in.readLong();
+            int count = in.readInt();
+            List<String> signatures = new ArrayList<>(count);
+            String previous = "";
+            for (int i = 0; i < count; i++) {
+                // length of the prefix shared with the previous signature, then the rest
+                int shared = in.readUnsignedShort();
+                String signature = previous.substring(0, shared) + in.readUTF();
+                signatures.add(signature);
+                previous = signature;
+            }
+            return new Entry(path, size, modified, checksum, signatures);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(checksum);
+            out.writeInt(signatures.size());
+            String previous = "";
+            for (String signature : signatures) {
+                int shared = sharedPrefix(previous, signature);
+                out.writeShort(shared);
+                out.writeUTF(signature.substring(shared));
+                previous = signature;
+            }
+        }
+
+        private static int sharedPrefix(String a, String b) {
+            int max = Math.min(Math.min(a.length(), b.length()), 0xFFFF);
+            int i = 0;
+            while (i < max && a.charAt(i) == b.charAt(i))
+                i++;
+            return i;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.poco.Extractor;
+
+/**
+ * Receives method signatures as they are extracted, so they do not all have to be held in memory at once.
+ */
+public interface SignatureSink {
+    public void accept(String signature);
+}
@@ -10,9 +10,21 @@ import joptsimple.OptionSpec;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.objectweb.asm.ClassReader;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -27,6 +39,12 @@ public class Compiler {
     private final boolean verboseFlag;
     /** Quit compilation after a certain phase */
     private final String endAfterFlag;
+    /** How the generated root policy shares state between threads (a DummyRootPolicy.ConcurrencyMode name) */
+    private final String concurrencyMode;
+    /** Generate policies that flatten their executions into state machines (see StateMachinePolicy) */
+    private final boolean stateMachineBackend;
+    /** Let generated policy trees skip children once their result is decided (see CombinedPolicy) */
+    private final boolean shortCircuitFlag;
 
     /*
      * FILES AND FOLDERS
@@ -48,6 +66,7 @@ public class Compiler {
     private String policyName;
     /** Parse tree generated by the ANTLR grammar */
     private ParseTree parseTree = null;
+    private PoCoParser parser = null;
     /** Regular expressions from PoCo policy */
     private ArrayList<String> extractedREs = null;
     
@@ -58,8 +77,8 @@ public class Compiler {
     Hashtable<String, HashSet<String>> extractedPtCuts4Promoter = null;
     Hashtable<String, HashSet<String>> extractedPtCuts4Results = null;
 
-    /**  All method signatures from files in scanFilePaths */
-    private LinkedHashSet<String> extractedMethodSignatures = null;
+    /**  All method signatures from files in scanFilePaths, read from the _allmethods.txt file when needed */
+    private Iterable<String> extractedMethodSignatures = null;
     /**  * Each RE from the PoCo policy mapped to all matching methods  */
     private LinkedHashMap<String, ArrayList<String>> regexMethodMappings = null;
     private LinkedHashMap<String, ArrayList<String>> pointcutMappings = null;
@@ -70,14 +89,20 @@ public class Compiler {
     private Hashtable<String, String> monitoredPC = new Hashtable<String, String>();
     private HashSet<String> varNeedBind;
     private HashSet<String> objParams;
+    /**
+     * Bound variables in the order the generated code first refers to them. A variable's position here is its slot
+     * offset from BINDING_BASE, the first DataWH slot the aspect reserves.
+     */
+    private LinkedHashMap<String, String> bindingTypes = new LinkedHashMap<String, String>();
+    private HashMap<String, Integer> bindingSlots = new HashMap<String, Integer>();
     int pointcutNum = 0;
     /**
      * Writes a Collection object to a file, separated by newlines.
      * @param items object adhering to the Collection interface
      * @param savePath Path pointing to the save file location
      */
-    public static void writeToFile(Collection<String> items, Path savePath) {
-        try (FileWriter writeStream = new FileWriter(savePath.toFile())) {
+    public static void writeToFile(Iterable<String> items, Path savePath) {
+        try (BufferedWriter writeStream = Files.newBufferedWriter(savePath, StandardCharsets.UTF_8)) {
             for (String item : items) {
                 writeStream.write(item);
                 writeStream.write('\n');
@@ -110,10 +135,11 @@ public class Compiler {
      * @param savePath Path pointing to the save file location
      */
     public static void writeMapToFile(LinkedHashMap<String, ArrayList<String>> map, Path savePath) {
-        try (FileWriter writeStream = new FileWriter(savePath.toFile())) {
-            for (String key : map.keySet()) {
-                writeStream.write(key + ":\n");
-                for (String value : map.get(key)) {
+        try (BufferedWriter writeStream = Files.newBufferedWriter(savePath, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, ArrayList<String>> entry : map.entrySet()) {
+                writeStream.write(entry.getKey());
+                writeStream.write(":\n");
+                for (String value : entry.getValue()) {
                     writeStream.write("    ");
                     writeStream.write(value);
                     writeStream.write('\n');
@@ -146,8 +172,11 @@ public class Compiler {
         optParser.accepts("extract");
         OptionSpec<String> outputOpt = optParser.accepts("o").withRequiredArg().ofType( String.class ).defaultsTo(Paths.get("").toAbsolutePath().toString());
         OptionSpec<String> scanOpts = optParser.accepts("c").withRequiredArg().ofType( String.class );
+        OptionSpec<String> concurrencyOpt = optParser.accepts("concurrency").withRequiredArg().ofType( String.class ).defaultsTo("shared");
+        OptionSpec<String> backendOpt = optParser.accepts("backend").withRequiredArg().ofType( String.class ).defaultsTo("tree");
         OptionSpec<String> policyArgs = optParser.nonOptions().ofType( String.class );
         optParser.accepts("v");
+        optParser.accepts("shortcircuit");
         OptionSet options = optParser.parse(arguments);
 
         // User wants verbose output?
@@ -173,6 +202,40 @@ public class Compiler {
             scanFilePaths[i] = Paths.get(scanOpts.values(options).get(i));
         }
 
+        // Thread-safety of the generated root policy
+        switch (concurrencyOpt.value(options)) {
+            case "shared":
+                this.concurrencyMode = "SHARED";
+                break;
+            case "thread":
+                this.concurrencyMode = "PER_THREAD";
+                break;
+            case "global":
+                this.concurrencyMode = "GLOBAL";
+                break;
+            default:
+                System.out.println("ERROR: --concurrency must be one of shared, thread or global.");
+                System.exit(-1);
+                this.concurrencyMode = null;
+        }
+
+        // How generated policies handle events
+        switch (backendOpt.value(options)) {
+            case "tree":
+                this.stateMachineBackend = false;
+                break;
+            case "statemachine":
+                this.stateMachineBackend = true;
+                break;
+            default:
+                System.out.println("ERROR: --backend must be one of tree or statemachine.");
+                System.exit(-1);
+                this.stateMachineBackend = false;
+        }
+
+        // Policy trees skip children that cannot change their result?
+        this.shortCircuitFlag = options.has("shortcircuit");
+
         // "--extract" option indicates that the user only wants to extract REs
         if (options.has("extract")) {
             this.endAfterFlag = "extract";
@@ -187,6 +250,9 @@ public class Compiler {
         }
         vOut("%s\n  %s\n", "PoCo Policy:", policyFilePath.toString());
         vOut("%s\n  %s\n", "Output Dir:", outputDir.toString());
+        vOut("%s\n  %s\n", "Concurrency:", concurrencyMode);
+        vOut("%s\n  %s\n", "Backend:", stateMachineBackend ? "statemachine" : "tree");
+        vOut("%s\n  %s\n", "Short-circuit:", shortCircuitFlag);
         vOut("%s\n", "Scan Targets:");
         for (Path scanFilePath : scanFilePaths) {
             vOut("  %s\n", scanFilePath.toString());
@@ -238,7 +304,7 @@ public class Compiler {
         // Call lexer, get tokens, pass tokens to parser. Obtain the parseTree for the root-level rule, "policy".
         PoCoLexer lexer = new PoCoLexer(antlrStream);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
-        PoCoParser parser = new PoCoParser(tokens);
+        this.parser = new PoCoParser(tokens);
         this.parseTree = parser.policy();
     }
 
@@ -280,31 +346,35 @@ public class Compiler {
         // Write REs to a file
         //Path policyExtractPath = outputDir.resolve(policyName + "_extracts.txt");
         //writeToFile(extractedREs, policyExtractPath);
-        //writeToFile(extractedPCs, policyExtractPath);
+        //writeToFile(extractedPCs, policyExtractPath);*/
         // Extract all method signatures from jar/class files
-        //vOut("Extracting method signatures from scan files...\n");*/
-        this.extractedMethodSignatures = new LinkedHashSet<>();
-
-        //Modify temporarily
-        /*for (Path scanFilePath : scanFilePaths) {
-            this.extractedMethodSignatures.addAll(new MethodSignaturesExtract(scanFilePath).getMethodSignatures());
-        }*/
-        // Write the extracted methods to a file
-        Path methodExtractPath = outputDir.resolve(policyName + "_allmethods.txt");
-        writeToFile(extractedMethodSignatures, methodExtractPath);
+        vOut("Extracting method signatures from scan files...\n");
+        // files that have not changed since an earlier run are read from the index in the output directory
+        SignatureIndex signatureIndex = SignatureIndex.load(outputDir.resolve(SignatureIndex.FILE_NAME));
+        // The extracted methods are written to a file as they are scanned; later steps read them back from it
+        SignatureFile methodExtractFile = new SignatureFile(outputDir.resolve(policyName + "_allmethods.txt"));
+        try (SignatureFile.Writer writer = methodExtractFile.writer()) {
+            MethodSignaturesExtract.scanAll(scanFilePaths, signatureIndex, writer);
+        } catch (Exception ex) {
+            // a truncated signature file would be mapped and indexed as if it were complete
+            System.out.println("ERROR: Could not write " + methodExtractFile.getPath());
+            System.out.println(ex.getMessage());
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+        signatureIndex.save();
+        this.extractedMethodSignatures = methodExtractFile;
     }
 
     /**
-     * Runs static analysis on policy. doExtract() must have already been called
+     * Runs static analysis on policy. doParse() and doExtract() must have already been called
      */
     private void doStaticAnalysis() {
         vOut("Performing static analysis...\n");
-        ANTLRInputStream antlrStream = null;
 
         try {
-            antlrStream = new ANTLRInputStream(new FileInputStream(policyFilePath.toFile()));
             StaticAnalysis sa = new StaticAnalysis();
-            sa.StaticAnalysis(antlrStream, this.extractedMethodSignatures);
+            sa.StaticAnalysis(parser, parseTree, this.extractedMethodSignatures);
         } catch (Exception ex) {
             System.out.println(ex.getMessage());
             ex.printStackTrace();
@@ -350,6 +420,8 @@ public class Compiler {
         // Create some class names
         String childPolicyName = policyName;
         outAspectPrologue(aspectName, childPolicyName);
+        bindingTypes.clear();
+        bindingSlots.clear();
 
         //adding variable declares so later we can updated the dynamic binding values.
         if (closure != null)
@@ -366,21 +438,30 @@ public class Compiler {
         genAdvice(extractedPtCuts, 0);
         genAdvice(extractedPtCuts4Results,1); //only result need gen after advice
 
-        if (this.extractedPtCuts4Promoter.size() > 0) {
+        // Generate policy classes into a buffer first: the promotions they make decide whether the
+        // reflective promotion path below is needed
+        StringWriter policyClasses = new StringWriter();
+        PolicyVisitor pvisitor = new PolicyVisitor(new PrintWriter(policyClasses), 1, this.closure);
+        pvisitor.setMainPolicyName(childPolicyName);
+        pvisitor.setStateMachines(stateMachineBackend);
+        pvisitor.setShortCircuit(shortCircuitFlag);
+        pvisitor.visit(parseTree);
+        boolean allPromotionsCompiled = genPromotionInvokers(pvisitor.getPromotions());
+
+        if (this.extractedPtCuts4Promoter.size() > 0 && !allPromotionsCompiled) {
             jOut(1, "pointcut PointCut%d(Method run):", pointcutNum);
             jOut(2, "target(run) &&call(Object Method.invoke(..));\n");
             outAdvicePrologue4Result("PointCut" + pointcutNum);
             pointcutNum++;
             addStackMatchingFunction();
         }
-        // Generate policy classes
-        PolicyVisitor pvisitor = new PolicyVisitor(aspectWriter, 1, this.closure);
-        pvisitor.visit(parseTree);
+        aspectWriter.print(policyClasses.toString());
 
         if (pvisitor.hasTransation()) {
             createTransUtil(pvisitor.getTransactions());
         }
 
+        outBindingSlots();
         outAspectEpilogue();
 
         aspectWriter.close();
@@ -466,6 +547,12 @@ public class Compiler {
             }
             //if no values need to be monitored then no need for define argument for pointcut
             if (monitorVals != null && monitorVals.length() > 0) {
+                String[] conditionState = genMonitorConditions(monitorVals);
+                //conditions on fixed argument values go into the pointcut, so that AspectJ skips
+                //the advice for calls the policy can never accept
+                String staticCondition = "";
+                if (conditionState != null && conditionState[2].length() > 0)
+                    staticCondition = " && if(" + conditionState[2] + ")";
                 jOut(1, "pointcut PointCut%d(%s):", pointcutNum, argList4PC);
 
                 String args = "";
@@ -474,31 +561,73 @@ public class Compiler {
                 }
                 callStr = (funName + "(" + args + ")").replace("\\", "");
                 if (argTypeList.trim().length() > 0) {
-                    jOut(2, "call(%s) && args(%s);\n", callStr, argList4Call);
+                    jOut(2, "call(%s) && args(%s)%s;\n", callStr, argList4Call, staticCondition);
                 } else {
-                    jOut(2, "call(%s);\n", callStr);
+                    jOut(2, "call(%s)%s;\n", callStr, staticCondition);
                 }
 
-                outAdvicePrologue("PointCut" + pointcutNum, argList4PC, argLs4Around, monitorVals, funReturnType, thisNodeMode);
+                outAdvicePrologue("PointCut" + pointcutNum, argList4PC, argLs4Around, monitorVals, conditionState,
+                        funReturnType, thisNodeMode);
             } else {
                 jOut(1, "pointcut PointCut%d():", pointcutNum);
                 callStr = getPCMethodName(entry);
                 jOut(2, "call(%s(%s));\n", callStr, argTypeList);
-                outAdvicePrologue("PointCut" + pointcutNum, argList4PC, argLs4Around, monitorVals, funReturnType, thisNodeMode);
+                outAdvicePrologue("PointCut" + pointcutNum, argList4PC, argLs4Around, monitorVals, null, funReturnType,
+                        thisNodeMode);
             }
             pointcutNum++;
         }
     }
 
+    /**
+     * @param varName bound variable
+     * @param varType declared type, used only if this is the first reference to the variable
+     * @return expression for the variable's DataWH slot in the generated aspect
+     */
+    private String bindingSlot(String varName, String varType) {
+        Integer slot = bindingSlots.get(varName);
+        if (slot == null) {
+            slot = bindingSlots.size();
+            bindingSlots.put(varName, slot);
+            bindingTypes.put(varName, varType);
+        }
+        return "BINDING_BASE + " + slot;
+    }
+
+    private String bindingSlot(String varName) {
+        return bindingSlot(varName, "java.lang.String");
+    }
+
+    /**
+     * Reserves the aspect's DataWH slots when the aspect class is initialized, before any advice can bind them.
+     */
+    private void outBindingSlots() {
+        if (bindingTypes.isEmpty())
+            return;
+        StringBuilder names = new StringBuilder();
+        StringBuilder types = new StringBuilder();
+        for (Map.Entry<String, String> entry : bindingTypes.entrySet()) {
+            if (names.length() > 0) {
+                names.append(", ");
+                types.append(", ");
+            }
+            names.append('"').append(entry.getKey()).append('"');
+            types.append('"').append(entry.getValue()).append('"');
+        }
+        jOut(1, "private static final int BINDING_BASE = DataWH.reserveSlots(");
+        jOut(3, "new String[]{%s},", names.toString());
+        jOut(3, "new String[]{%s});\n", types.toString());
+    }
+
     private void outAspectEpilogue() {
         jOut(0, "}");
     }
 
     private void addStackMatchingFunction() {
         jOut(1, "private boolean matchingStack(String runningMethod) {");
-        jOut(2, "if (root.promotedEvents != null)");
-        jOut(3, "if(root.promotedEvents.peek().equals(runningMethod)) {");
-        jOut(4, "root.promotedEvents.pop();");
+        jOut(2, "if (!root.getPromotedEvents().empty())");
+        jOut(3, "if(root.getPromotedEvents().peek().equals(runningMethod)) {");
+        jOut(4, "root.getPromotedEvents().pop();");
         jOut(4, "return true;");
         jOut(3, "}");
         jOut(2, "return false;");
@@ -593,47 +722,65 @@ public class Compiler {
         jOut(0, "import com.poco.PoCoRuntime.*;");
         jOut(0, "import java.lang.reflect.Method;\n");
         jOut(0, "public aspect %s {", aspectName);
-        jOut(1, "private DummyRootPolicy root = new DummyRootPolicy( new %s() );\n", childName);
+        if (concurrencyMode.equals("SHARED")) {
+            jOut(1, "private DummyRootPolicy root = new DummyRootPolicy( new %s() );\n", childName);
+        } else {
+            // Other modes may need more than one instance of the policy, so hand the root a factory
+            jOut(1, "private DummyRootPolicy root = new DummyRootPolicy(new PolicyFactory() {");
+            jOut(2, "public Policy newPolicy() { return new %s(); }", childName);
+            jOut(1, "}, DummyRootPolicy.ConcurrencyMode.%s);\n", concurrencyMode);
+        }
     }
 
-    private void outAdvicePrologue(String pointcutName, String aroundlist, String arglist, String monitorVal, String funReturnType, int mode) {
-         /* aroundlist: String value0,int value1; arglist: value0,value1; monitorVal String value0$$*.class$$*/
-        if (monitorVal != null && monitorVal.length() > 0) {
-            String[] typeValArray = monitorVal.split(",");
-            String[] varTyps = new String[typeValArray.length];
-            String[] varNams = new String[typeValArray.length];
-            String[] varVals = new String[typeValArray.length];
-            if (typeValArray != null) {
-                String reg1 = "(.+)\\$\\$\\$(.+)\\$\\$\\$";
-                String reg2 = "(.+)\\$\\$(.+)\\$\\$";
-                Pattern pattern1 = Pattern.compile(reg1);
-                Pattern pattern2 = Pattern.compile(reg2);
-                Matcher matcher1;
-                Matcher matcher2;
-                for (int i = 0; i < typeValArray.length; i++) {
-                    matcher1 = pattern1.matcher(typeValArray[i]);
-                    matcher2 = pattern2.matcher(typeValArray[i]);
-                    if (matcher1.find()) {
-                        varTyps[i] = matcher1.group(1).toString().trim().split(" ")[0];
-                        varNams[i] = matcher1.group(1).toString().trim().split(" ")[1];
-                        varVals[i] = matcher1.group(2).toString().trim();
-                    } else if (matcher2.find()) {
-                        varTyps[i] = matcher2.group(1).toString().trim().split(" ")[0];
-                        varNams[i] = matcher2.group(1).toString().trim().split(" ")[1];
-                        varVals[i] = matcher2.group(2).toString().trim();
-                        if (varNeedBind != null && varNeedBind.contains(varVals[i]))
-                            monitoredPC.put(varVals[i], varNams[i]);
-                        varVals[i] = "$$" + varVals[i];
-                    }
+    /**
+     * Turns the monitored argument values of a pointcut into condition statements.
+     *
+     * @param monitorVal e.g. String value0$$*.class$$
+     * @return conditions checked in the advice, value updates, and conditions on fixed values that the pointcut
+     *         checks; see genCoditionStatements
+     */
+    private String[] genMonitorConditions(String monitorVal) {
+        String[] typeValArray = monitorVal.split(",");
+        String[] varTyps = new String[typeValArray.length];
+        String[] varNams = new String[typeValArray.length];
+        String[] varVals = new String[typeValArray.length];
+        if (typeValArray != null) {
+            String reg1 = "(.+)\\$\\$\\$(.+)\\$\\$\\$";
+            String reg2 = "(.+)\\$\\$(.+)\\$\\$";
+            Pattern pattern1 = Pattern.compile(reg1);
+            Pattern pattern2 = Pattern.compile(reg2);
+            Matcher matcher1;
+            Matcher matcher2;
+            for (int i = 0; i < typeValArray.length; i++) {
+                matcher1 = pattern1.matcher(typeValArray[i]);
+                matcher2 = pattern2.matcher(typeValArray[i]);
+                if (matcher1.find()) {
+                    varTyps[i] = matcher1.group(1).toString().trim().split(" ")[0];
+                    varNams[i] = matcher1.group(1).toString().trim().split(" ")[1];
+                    varVals[i] = matcher1.group(2).toString().trim();
+                } else if (matcher2.find()) {
+                    varTyps[i] = matcher2.group(1).toString().trim().split(" ")[0];
+                    varNams[i] = matcher2.group(1).toString().trim().split(" ")[1];
+                    varVals[i] = matcher2.group(2).toString().trim();
+                    if (varNeedBind != null && varNeedBind.contains(varVals[i]))
+                        monitoredPC.put(varVals[i], varNams[i]);
+                    varVals[i] = "$$" + varVals[i];
                 }
             }
+        }
+        return genCoditionStatements(varTyps, varNams, varVals);
+    }
+
+    private void outAdvicePrologue(String pointcutName, String aroundlist, String arglist, String monitorVal,
+                                   String[] conditionState, String funReturnType, int mode) {
+         /* aroundlist: String value0,int value1; arglist: value0,value1; monitorVal String value0$$*.class$$*/
+        if (monitorVal != null && monitorVal.length() > 0) {
             if (monitorVal != null && monitorVal.length() > 0)
                 jOut(1, "Object around(%s): %s(%s) {", aroundlist, pointcutName, arglist);
             else
                 jOut(1, "Object around(): %s() {", pointcutName);
 
             jOut(2, "Object ret = null;");
-            String[] conditionState = genCoditionStatements(varTyps, varNams, varVals);
             if (conditionState != null && conditionState[0] != null && conditionState[0].length() > 0) {
                 jOut(2, "if (" + conditionState[0] + ") {");
 
@@ -645,7 +792,7 @@ public class Compiler {
                 outAdviceProlog4DynBind(3, 0);
 
                 if (mode == 0) { //monitor the action
-                    jOut(3, "root.queryAction(new Event(thisJoinPoint));");
+                    jOut(3, "root.queryAction(Event.forStaticPart(thisJoinPointStaticPart));");
                     jOut(3, "ret = proceed(%s);", arglist);
                     outAdviceProlog4DynBind(3, 1);
                     jOut(2, "}");
@@ -654,7 +801,7 @@ public class Compiler {
                 } else { //if(mode == 1  || mode ==2) { // monitor the result
                     jOut(3, "ret = proceed(%s);", arglist);
                     outAdviceProlog4DynBind(3, 1);
-                    jOut(3, "Event event = new Event(thisJoinPoint);");
+                    jOut(3, "Event event = Event.forStaticPart(thisJoinPointStaticPart);");
                     jOut(3, "event.setEventType(\"Result\");");
                     jOut(3, "if(ret!=null)");
                     jOut(4, "event.setResult(ret);");
@@ -665,11 +812,24 @@ public class Compiler {
                     jOut(2, "}");
                     jOut(2, "else   return proceed(%s);", arglist);
                 }
-            } else {
+            } else if (mode == 0) {
                 outAdviceProlog4DynBind(2, 0);
-                jOut(2, "root.queryAction(new Event(thisJoinPoint));");
+                jOut(2, "root.queryAction(Event.forStaticPart(thisJoinPointStaticPart));");
                 outAdviceProlog4DynBind(2, 1);
                 jOut(2, "return proceed(%s);", arglist);
+            } else {
+                //every condition is checked by the pointcut, but the result still has to be monitored
+                outAdviceProlog4DynBind(2, 0);
+                jOut(2, "ret = proceed(%s);", arglist);
+                outAdviceProlog4DynBind(2, 1);
+                jOut(2, "Event event = Event.forStaticPart(thisJoinPointStaticPart);");
+                jOut(2, "event.setEventType(\"Result\");");
+                jOut(2, "if(ret!=null)");
+                jOut(3, "event.setResult(ret);");
+                jOut(2, "else");
+                jOut(3, "event.setResult(\"done\");");
+                jOut(2, "root.queryAction(event);");
+                jOut(2, "return ret;");
             }
             jOut(1, "}\n");
 
@@ -688,15 +848,16 @@ public class Compiler {
                             jOut(3, str);
                     }
                     outAdviceProlog4DynBind(3, 0);
-                    jOut(3, "root.queryAction(new Event(thisJoinPoint));");
+                    jOut(3, "root.queryAction(Event.forStaticPart(thisJoinPointStaticPart));");
                     //before will do not proceed the action, so no variable binding for result
                     jOut(3, "return;");
                     jOut(2, "}");
                     jOut(2, "else   return;");
                 } else {
                     outAdviceProlog4DynBind(2, 0);
+                    jOut(2, "root.queryAction(Event.forStaticPart(thisJoinPointStaticPart));");
                     //before will do not proceed the action, so no variable binding for result
-                    jOut(3, "return;");
+                    jOut(2, "return;");
                 }
                 jOut(1, "}\n");
             }
@@ -707,13 +868,13 @@ public class Compiler {
                 jOut(1, "Object around(): %s() {", pointcutName);
             if (mode == 0) { //monitor the action
                 outAdviceProlog4DynBind(2, 0);
-                jOut(2, "root.queryAction(new Event(thisJoinPoint));");
+                jOut(2, "root.queryAction(Event.forStaticPart(thisJoinPointStaticPart));");
                 jOut(2, "return proceed();");
             } else {
                 outAdviceProlog4DynBind(2, 0);
                 jOut(2, "Object ret = proceed();", arglist);
                 outAdviceProlog4DynBind(2, 1);
-                jOut(2, "Event event = new Event(thisJoinPoint);");
+                jOut(2, "Event event = Event.forStaticPart(thisJoinPointStaticPart);");
                 jOut(2, "event.setEventType(\"Result\");");
                 jOut(2, "if(ret!=null)");
                 jOut(3, "event.setResult(ret);");
@@ -726,7 +887,7 @@ public class Compiler {
             if (mode == 2) {
                 jOut(1, "before(): %s() {", pointcutName);
                 outAdviceProlog4DynBind(2, 0);
-                jOut(3, "root.queryAction(new Event(thisJoinPoint));");
+                jOut(3, "root.queryAction(Event.forStaticPart(thisJoinPointStaticPart));");
                 //before will do not proceed the action, so no variable binding for result
                 jOut(3, "return;");
                 jOut(1, "}\n");
@@ -738,22 +899,27 @@ public class Compiler {
         if (varTyps == null || varTyps.length == 0)
             return null;
         else {
-            String[] returnStr = new String[2];
+            //[0]: checked in the advice; [1]: value updates; [2]: on fixed values, checked by the pointcut
+            String[] returnStr = new String[3];
             returnStr[0] = "";
             returnStr[1] = "";
+            returnStr[2] = "";
             String[] temp = new String[2];
             for (int i = 0; i < varTyps.length; i++) {
                 //need handle the case where we do not care about the type and value
                 if (varVals[i] == null) {
                     continue;
                 }
-                if (varVals[i].startsWith("$$") && !varVals[i].startsWith("$$$"))
+                boolean isFixed = !varVals[i].startsWith("$$") || varVals[i].startsWith("$$$");
+                if (!isFixed)
                     temp = genCoditionStatement(varTyps[i], varNams[i],
                             varVals[i].substring(2, varVals[i].length()), 1);
                 else
                     temp = genCoditionStatement(varTyps[i], varNams[i], varVals[i], 0);
                 if (temp != null) {
-                    if (temp[0] != null)
+                    if (temp[0] != null && isFixed && temp[1] == null)
+                        returnStr[2] += temp[0] + " && ";
+                    else if (temp[0] != null)
                         returnStr[0] += temp[0] + " && ";
                     if (temp[1] != null)
                         returnStr[1] += temp[1] + " && ";
@@ -761,6 +927,7 @@ public class Compiler {
             }
             returnStr[0] = trimLastPunctuation(returnStr[0], " && ");
             returnStr[1] = trimLastPunctuation(returnStr[1], " && ");
+            returnStr[2] = trimLastPunctuation(returnStr[2], " && ");
             return returnStr;
         }
     }
@@ -809,7 +976,7 @@ public class Compiler {
         jOut(2, "if (matchingStack(className)) {");
         jOut(3, "Object ret = proceed(run);");
         genVarBing4Prom();
-        jOut(3, "Event event = new Event(thisJoinPoint);");
+        jOut(3, "Event event = Event.forStaticPart(thisJoinPointStaticPart);");
         jOut(3, "event.setEventType(\"Result\");");
         jOut(3, "String methodName = run.getDeclaringClass().toString()+\".\"+run.getName();");
         jOut(3, "if (methodName.startsWith(\"class \"))");
@@ -828,25 +995,17 @@ public class Compiler {
         if (mode == 0) {
             if (monitoredPC != null && monitoredPC.size() > 0) {
                 Set<String> set = monitoredPC.keySet();
-                jOut(offset, "String typeVal; ");
                 for (Iterator<String> it = set.iterator(); it.hasNext(); ) {
                     String varName = it.next();
                     if (varNeedBind.contains(varName))
                         varNeedBind.remove(varName);
-                    jOut(offset, "typeVal = DataWH.dataVal.get(\"" + varName + "\").getType();");
-                    jOut(offset, "DataWH.dataVal.remove(\"" + varName + "\");");
-                    jOut(offset, "DataWH.dataVal.put(\"" + varName + "\", new TypeVal(typeVal, " + monitoredPC.get(varName) + "));");
+                    jOut(offset, "DataWH.bind(%s, %s);", bindingSlot(varName), monitoredPC.get(varName));
                 }
             }
         } else {
             if (varNeedBind != null) {
                 for (String str : varNeedBind) {
-                    jOut(offset, "if(DataWH.dataVal.get(\"" + str + "\")!=null) {");
-                    jOut(offset + 1, "String typeVal;");
-                    jOut(offset + 1, "typeVal = DataWH.dataVal.get(\"" + str + "\").getType();");
-                    jOut(offset + 1, "DataWH.dataVal.remove(\"" + str + "\");");
-                    jOut(offset + 1, "DataWH.dataVal.put(\"" + str + "\", new TypeVal(typeVal, ret));");
-                    jOut(offset, "}");
+                    jOut(offset, "DataWH.bind(%s, ret);", bindingSlot(str));
                 }
             }
         }
@@ -1000,59 +1159,271 @@ public class Compiler {
                 if (varContext.contains("%."))
                     varContext = varContext.replace("%.", "(.*)\\.");
                 varContext = varContext.replace("\\", "\\\\");
-                String str = "new TypeVal(\"" + varType + "\",  null));";
+                String slotType = varType;
+                String value = "null";
                 if (!varContext.equals("null")) {
                     switch (varType) {
                         case "int":
-                            str = "new TypeVal(\"java.lang.String\",\"" + varContext + "\"));";
+                            slotType = "java.lang.String";
+                            value = "\"" + varContext + "\"";
                             break;
                         case "short":
-                            str = "new TypeVal(\"short\",new Integer(\"" + varContext + "\")));";
+                            value = "Short.valueOf(\"" + varContext + "\")";
                             break;
                         case "long":
-                            str = "new TypeVal(\"long\",new Long(\"" + varContext + "\")));";
+                            value = "Long.valueOf(\"" + varContext + "\")";
                             break;
                         case "double":
-                            str = "new TypeVal(\"double\",new Double(\"" + varContext + "\")));";
+                            value = "Double.valueOf(\"" + varContext + "\")";
                             break;
                         case "float":
-                            str = "new TypeVal(\"float\",new Float(\"" + varContext + "\")));";
+                            value = "Float.valueOf(\"" + varContext + "\")";
                             break;
                         case "boolean":
-                            str = "new TypeVal(\"boolean\",new Boolean(\"" + varContext + "\")));";
+                            value = "Boolean.valueOf(\"" + varContext + "\")";
                             break;
                         case "char":
-                            str = "new TypeVal(\"char\",new Character(" + varContext + ".CharAt(0))));";
+                            value = "Character.valueOf(\"" + varContext + "\".charAt(0))";
                             break;
                         case "String":
                         case "java.lang.String":
-                            str = "new TypeVal(\"java.lang.String\", \"" + varContext + "\"));";
+                            slotType = "java.lang.String";
+                            value = "\"" + varContext + "\"";
                             break;
                         case "Message":
                         case "javax.mail.Message":
-                            str = "new TypeVal(\"java.lang.String\",  null));";
+                            slotType = "java.lang.String";
                             break;
                     }
                 }
-                jOut(2, "DataWH.dataVal.put(\"" + s + "\"," + str);
+                jOut(2, "DataWH.bind(%s, %s);", bindingSlot(s, slotType), value);
             }
         }
         jOut(1, "}");
     }
 
+    /**
+     * Emits a PromotionInvoker class for every promotion that names a public method the compiler can load, from the
+     * scanned files (-c) or the JDK, and registers them with the Promoter when the aspect is initialized. The runtime
+     * calls those methods directly instead of looking them up and invoking them through reflection.
+     *
+     * @param promotions positive SRE strings of the policy
+     * @return true if every promotion got an invoker, so the reflective promotion path is not needed
+     */
+    private boolean genPromotionInvokers(Set<String> promotions) {
+        if (promotions.isEmpty())
+            return true;
+        // the JDK's classes, but not the compiler's own libraries (antlr, asm, ...), which could shadow the scanned
+        // application's copies
+        ClassLoader platformClasses = ClassLoader.getSystemClassLoader().getParent();
+        try (URLClassLoader scannedClasses = new URLClassLoader(scanFileRoots(), platformClasses)) {
+            return genPromotionInvokers(promotions, scannedClasses);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return class path roots of the scanned files: jars and folders as they are, and for a class file the folder
+     *         its package starts in
+     */
+    private URL[] scanFileRoots() throws IOException {
+        ArrayList<URL> roots = new ArrayList<URL>();
+        for (Path scanFilePath : scanFilePaths) {
+            Path root = scanFilePath.toAbsolutePath();
+            if (scanFilePath.toString().endsWith(".class")) {
+                String internalName;
+                try (InputStream in = Files.newInputStream(scanFilePath)) {
+                    internalName = new ClassReader(in).getClassName();
+                } catch (RuntimeException ex) {
+                    continue; // a class file ASM cannot read; the extractor reports it
+                }
+                // com/poco/MailUtil is found three levels above .../com/poco/MailUtil.class
+                for (int i = internalName.split("/").length; i > 0 && root != null; i--)
+                    root = root.getParent();
+                if (root == null)
+                    continue;
+            }
+            roots.add(root.toUri().toURL());
+        }
+        return roots.toArray(new URL[roots.size()]);
+    }
+
+    private boolean genPromotionInvokers(Set<String> promotions, ClassLoader scannedClasses) {
+        boolean allCompiled = true;
+        ArrayList<String> registrations = new ArrayList<String>();
+        for (String promotion : promotions) {
+            Method target = resolvePromotionTarget(promotion, scannedClasses);
+            if (target == null) {
+                allCompiled = false;
+                continue;
+            }
+            String invokerName = "PromotionInvoker" + registrations.size();
+            String declaring = target.getDeclaringClass().getName();
+            String methodName = declaring + "." + target.getName();
+            Class<?>[] paramTypes = target.getParameterTypes();
+            StringBuilder args = new StringBuilder();
+            for (int i = 0; i < paramTypes.length; i++) {
+                if (i > 0)
+                    args.append(", ");
+                args.append("(").append(boxedName(paramTypes[i])).append(") args[").append(i).append("]");
+            }
+            String call;
+            if (Modifier.isStatic(target.getModifiers()))
+                call = target.getDeclaringClass().getCanonicalName() + "." + target.getName() + "(" + args + ")";
+            else
+                call = "new " + target.getDeclaringClass().getCanonicalName() + "()." + target.getName() + "(" + args + ")";
+
+            jOut(1, "private static final class %s implements PromotionInvoker {", invokerName);
+            jOut(2, "public Object invoke(Object[] args) throws Exception {");
+            if (target.getReturnType() == void.class) {
+                jOut(3, "%s;", call);
+                jOut(3, "Object ret = null;");
+            } else {
+                jOut(3, "Object ret = %s;", call);
+            }
+            // the bindings the Method.invoke advice would make for this method
+            for (Map.Entry<String, HashSet<String>> entry : extractedPtCuts4Promoter.entrySet()) {
+                if (entry.getValue().size() > 0 && classNameMatch(entry.getKey(), methodName)) {
+                    jOut(3, "DataWH.bind(%s, ret);", bindingSlot((String) entry.getValue().toArray()[0]));
+                }
+            }
+            jOut(3, "return ret;");
+            jOut(2, "}");
+            jOut(1, "}\n");
+            registrations.add("Promoter.register(\"" + promotion.replace("\\", "\\\\") + "\", \"" + methodName
+                    + "\", new " + invokerName + "());");
+        }
+        if (!registrations.isEmpty()) {
+            jOut(1, "static {");
+            for (String registration : registrations)
+                jOut(2, "%s", registration);
+            jOut(1, "}\n");
+        }
+        return allCompiled;
+    }
+
+    /**
+     * Finds the method a promotion names, the way the runtime Promoter does: closure variables substituted, the
+     * class loaded by name, and a public method whose parameter types are exactly the types in the SRE.
+     *
+     * @param promotion      positive SRE string, e.g. $$Pol_AddBCC$$(#javax.mail.Message{$$Pol_msg$$})
+     * @param scannedClasses loader for the scanned files, the monitored application's classes
+     * @return the method, or null if the promotion cannot be resolved while compiling
+     */
+    private Method resolvePromotionTarget(String promotion, ClassLoader scannedClasses) {
+        String resultPos = promotion;
+        Matcher varMatcher = Pattern.compile("(.*)(\\$\\$(.+)\\$\\$)(.*)").matcher(resultPos);
+        while (varMatcher.find()) {
+            String varContext = (closure == null) ? null : closure.getContext(varMatcher.group(3).trim());
+            // wildcards are only resolved at runtime
+            if (varContext == null || varContext.contains("%") || varContext.contains("*"))
+                return null;
+            if (resultPos.indexOf('(') != -1 && varContext.indexOf('(') != -1)
+                varContext = varContext.substring(0, varContext.indexOf('('));
+            resultPos = resultPos.replace(varMatcher.group(2).trim(), varContext.trim());
+            varMatcher = Pattern.compile("(.*)(\\$\\$(.+)\\$\\$)(.*)").matcher(resultPos);
+        }
+        Matcher funMatcher = Pattern.compile("(.+\\.)*(.+)\\((.*)\\)").matcher(resultPos);
+        if (!funMatcher.matches() || funMatcher.group(1) == null || resultPos.contains("|"))
+            return null;
+        String className = funMatcher.group(1).substring(0, funMatcher.group(1).length() - 1).trim();
+        String methodName = funMatcher.group(2).trim();
+        if (className.trim().split(" ").length == 2)
+            className = className.trim().split(" ")[1];
+        if (methodName.equals("new"))
+            return null;
+
+        ArrayList<String> paramTypes = new ArrayList<String>();
+        if (funMatcher.group(3).trim().length() > 0) {
+            Pattern typePattern = Pattern.compile("#(.+)\\{(.+)\\}");
+            for (String param : funMatcher.group(3).split(",")) {
+                Matcher typeMatcher = typePattern.matcher(param);
+                if (!typeMatcher.find())
+                    return null;
+                paramTypes.add(typeMatcher.group(1).trim());
+            }
+        }
+
+        try {
+            Class<?> cls = Class.forName(className, false, scannedClasses);
+            if (!Modifier.isPublic(cls.getModifiers()))
+                return null;
+            for (Method method : cls.getMethods()) {
+                if (!method.getName().equals(methodName) || !sameParamTypes(method, paramTypes))
+                    continue;
+                if (!Modifier.isStatic(method.getModifiers())
+                        && (Modifier.isAbstract(cls.getModifiers()) || !hasPublicNoArgConstructor(cls)))
+                    return null;
+                if (!Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+                    return null;
+                return method;
+            }
+        } catch (Throwable ex) {
+            // neither scanned nor in the JDK, or its dependencies are missing; the runtime resolves it
+        }
+        return null;
+    }
+
+    private static boolean sameParamTypes(Method method, ArrayList<String> paramTypes) {
+        Type[] methodParams = method.getGenericParameterTypes();
+        if (methodParams.length != paramTypes.size())
+            return false;
+        for (int i = 0; i < methodParams.length; i++) {
+            // same comparison as Promoter.GetTypeName
+            String typeName = methodParams[i].toString();
+            if (typeName.length() > 6 && typeName.substring(0, 5).equals("class"))
+                typeName = typeName.substring(6);
+            if (!typeName.equals(paramTypes.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasPublicNoArgConstructor(Class<?> cls) {
+        try {
+            cls.getConstructor();
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return name to cast an Object argument to before passing it as the given parameter type
+     */
+    private static String boxedName(Class<?> type) {
+        if (!type.isPrimitive())
+            return type.getCanonicalName();
+        switch (type.getName()) {
+            case "int":
+                return "Integer";
+            case "char":
+                return "Character";
+            default:
+                return Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+        }
+    }
+
+    /**
+     * Compile-time version of the SREUtil.StringMatch check the Method.invoke advice makes before binding a
+     * promoted method's result.
+     */
+    private static boolean classNameMatch(String matchingVal, String className) {
+        String regex = className.replace(".", "\\.").replace("*", "(.*)");
+        return Pattern.compile(regex).matcher(matchingVal).find();
+    }
+
     private void genVarBing4Prom() {
         Set<String> set = extractedPtCuts4Promoter.keySet();
-        int i = 0;
         for (Iterator<String> it = set.iterator(); it.hasNext(); ) {
             String varName = it.next();
             varNeedBind = extractedPtCuts4Promoter.get(varName);
             if(varNeedBind.size()>0) {
                 String str = (String)varNeedBind.toArray()[0];
                 jOut(3, "if(SREUtil.StringMatch(\"" + varName + "\", className)){");
-                jOut(4, "String typeVal%d;", i);
-                jOut(4, "typeVal%d = DataWH.dataVal.get(\"" + str + "\").getType();",i);
-                jOut(4, "DataWH.dataVal.remove(\"" + str + "\");");
-                jOut(4, "DataWH.dataVal.put(\"ClassLoaders_stacktrace\", new TypeVal(typeVal%d, ret));",i++);
+                jOut(4, "DataWH.bind(%s, ret);", bindingSlot(str));
                 jOut(3, "}");
             }
         }
@@ -0,0 +1,237 @@
+package com.poco.PoCoCompiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Inverted index from the identifiers in method signatures (package and class name segments, method names, type
+ * names) to the signatures that contain them. RegexMapper uses it to narrow the signatures a regex is tested against.
+ *
+ * A regex can only match signatures that contain every identifier it matches literally. For example,
+ * java\.io\.File\.delete\( needs io, File and delete. The candidates are the signatures that contain all of them.
+ * Regexes with no such identifier get no candidate set and must be tested against every signature.
+ */
+class IdentifierIndex {
+    private final String[] signatures;
+    /* identifier -> indexes into signatures, ascending */
+    private final HashMap<String, int[]> postings = new HashMap<>();
+
+    IdentifierIndex(String[] signatures) {
+        this.signatures = signatures;
+        HashMap<String, IntList> building = new HashMap<>();
+        for (int i = 0; i < signatures.length; i++) {
+            for (String identifier : identifiers(signatures[i], 0, signatures[i].length(), true)) {
+                IntList list = building.get(identifier);
+                if (list == null) {
+                    list = new IntList();
+                    building.put(identifier, list);
+                }
+                list.add(i);
+            }
+        }
+        for (java.util.Map.Entry<String, IntList> entry : building.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * @param regex regex matched with Matcher.find()
+     * @return indexes of the only signatures the regex can match, ascending, or null if the index cannot narrow the
+     *         search for this regex
+     */
+    int[] candidates(String regex) {
+        List<String> required = requiredIdentifiers(regex);
+        if (required == null || required.isEmpty())
+            return null;
+        int[] result = null;
+        for (String identifier : required) {
+            int[] list = postings.get(identifier);
+            if (list == null)
+                return new int[0];
+            result = (result == null) ? list : intersect(result, list);
+            if (result.length == 0)
+                break;
+        }
+        return result;
+    }
+
+    String signature(int index) {
+        return signatures[index];
+    }
+
+    /**
+     * Finds the identifiers that every match of the regex contains as whole identifiers. Only literal text outside of
+     * groups, character classes and quantified atoms counts. A regex with a top-level alternation, inline flags or
+     * quoting gives null, since its literal text is not required.
+     */
+    static List<String> requiredIdentifiers(String regex) {
+        ArrayList<String> identifiers = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (depth > 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    i = skipClass(regex, i);
+                    if (i < 0)
+                        return null;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                continue;
+            }
+            switch (c) {
+                case '|':
+                    return null;
+                case '(':
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '?' && !isGroupConstruct(regex, i + 2))
+                        return null; // inline flags such as (?i)
+                    endRun(run, identifiers);
+                    depth++;
+                    break;
+                case '[':
+                    endRun(run, identifiers);
+                    i = skipClass(regex, i);
+                    if (i < 0)
+                        return null;
+                    break;
+                case '*':
+                case '?':
+                case '+':
+                case '{':
+                    // the atom before a quantifier is optional or repeated, so it is not literal text
+                    if (run.length() > 0)
+                        run.setLength(run.length() - 1);
+                    endRun(run, identifiers);
+                    if (c == '{') {
+                        int close = regex.indexOf('}', i);
+                        if (close < 0)
+                            return null;
+                        i = close;
+                    }
+                    break;
+                case '\\':
+                    if (i + 1 >= regex.length())
+                        return null;
+                    char escaped = regex.charAt(++i);
+                    if (escaped == 'Q' || escaped == 'E')
+                        return null;
+                    if (Character.isLetterOrDigit(escaped)) {
+                        // character classes, anchors and back references
+                        endRun(run, identifiers);
+                    } else {
+                        run.append(escaped);
+                    }
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    endRun(run, identifiers);
+                    break;
+                default:
+                    run.append(c);
+            }
+        }
+        if (depth != 0)
+            return null;
+        endRun(run, identifiers);
+        return identifiers;
+    }
+
+    private static boolean isGroupConstruct(String regex, int index) {
+        if (index >= regex.length())
+            return false;
+        char c = regex.charAt(index);
+        return c == ':' || c == '=' || c == '!' || c == '<' || c == '>';
+    }
+
+    /**
+     * @return index of the ']' closing the character class opened at start, or -1 if there is none
+     */
+    private static int skipClass(String regex, int start) {
+        int nested = 0;
+        for (int i = start + 1; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nested++;
+            } else if (c == ']' && i > start + 1) {
+                if (nested == 0)
+                    return i;
+                nested--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the identifiers the literal run contains whole: an identifier at either end of the run may continue
+     * outside of it, so only identifiers with a non-identifier character on both sides count.
+     */
+    private static void endRun(StringBuilder run, List<String> identifiers) {
+        if (run.length() > 0)
+            identifiers.addAll(identifiers(run.toString(), 0, run.length(), false));
+        run.setLength(0);
+    }
+
+    /**
+     * @param whole true if the text is complete, so identifiers at its ends are whole too
+     */
+    private static List<String> identifiers(String text, int from, int to, boolean whole) {
+        ArrayList<String> result = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            if (!Character.isJavaIdentifierPart(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < to && Character.isJavaIdentifierPart(text.charAt(i)))
+                i++;
+            if (whole || (start > from && i < to))
+                result.add(text.substring(start, i));
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return java.util.Arrays.copyOf(result, n);
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            // a signature lists an identifier once
+            if (size > 0 && values[size - 1] == value)
+                return;
+            if (size == values.length)
+                values = java.util.Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return java.util.Arrays.copyOf(values, size);
+        }
+    }
+}
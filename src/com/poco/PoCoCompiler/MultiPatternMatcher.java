@@ -0,0 +1,383 @@
+package com.poco.PoCoCompiler;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Tests a string against many regexes in one pass, with Matcher.find() semantics.
+ *
+ * Each regex R becomes a minimized brics DFA for .*R. The matcher runs them all at once: its states are tuples of
+ * their states, built the first time a string reaches them, and each is tagged with the regexes it has matched. A
+ * regex that has matched stays matched, so its component is no longer stepped. Transitions on ASCII characters are
+ * kept in one flat table, so a step on a known transition is a single array read.
+ *
+ * Only regexes that brics can express are accepted (see toBricsSyntax). Anchors, look-around, back references and
+ * inline flags are not supported; callers test those regexes with java.util.regex.
+ */
+class MultiPatternMatcher {
+    /** tuple states kept; beyond this, states are computed but not cached */
+    private static final int MAX_CACHED_STATES = 50000;
+    /** component state of a regex that can no longer match; RunAutomaton.step returns it for dead transitions */
+    private static final int DEAD = -1;
+    /** component state of a regex that has matched */
+    private static final int MATCHED = -2;
+
+    /** characters Java's '.' does not match, without DOTALL */
+    private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+
+    private final RunAutomaton[] automata;
+    private final HashMap<StateKey, TupleState> states = new HashMap<>();
+    /* cached states by id */
+    private final ArrayList<TupleState> stateList = new ArrayList<>();
+    /* id + 1 of the state reached from state id on ASCII character c at [id * 128 + c], or 0 if not built yet */
+    private int[] asciiTable = new int[128 * 64];
+    private final TupleState initial;
+
+    /**
+     * @param bricsRegexes regexes in brics syntax, from toBricsSyntax
+     */
+    MultiPatternMatcher(String[] bricsRegexes) {
+        automata = new RunAutomaton[bricsRegexes.length];
+        Automaton any = Automaton.makeAnyString();
+        int[] start = new int[bricsRegexes.length];
+        for (int i = 0; i < bricsRegexes.length; i++) {
+            // no trailing .*: a regex is not stepped any more once it has matched
+            Automaton am = any.concatenate(new RegExp(bricsRegexes[i], RegExp.NONE).toAutomaton());
+            am.minimize();
+            automata[i] = new RunAutomaton(am);
+            start[i] = automata[i].getInitialState();
+            if (automata[i].isAccept(start[i]))
+                start[i] = MATCHED; // the regex matches the empty string
+        }
+        initial = intern(start);
+    }
+
+    /**
+     * @return indexes of the regexes that find a match in s, ascending
+     */
+    int[] matches(String s) {
+        int[] table = asciiTable;
+        int state = initial.id;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            int next = (c < 128) ? table[(state << 7) | c] - 1 : -1;
+            if (next < 0) {
+                TupleState current = stateList.get(state);
+                if (current.finished)
+                    return current.matched;
+                TupleState nextState = current.next(c);
+                if (nextState.id < 0)
+                    return matchesUncached(nextState, s, i + 1);
+                next = nextState.id;
+                table = asciiTable;
+            }
+            state = next;
+        }
+        return stateList.get(state).matched;
+    }
+
+    /**
+     * Finishes a string with states that did not fit into the cache.
+     */
+    private int[] matchesUncached(TupleState state, String s, int from) {
+        for (int i = from; i < s.length() && !state.finished; i++) {
+            state = step(state, s.charAt(i));
+        }
+        return state.matched;
+    }
+
+    private TupleState step(TupleState from, char c) {
+        int[] next = new int[from.components.length];
+        for (int i = 0; i < next.length; i++) {
+            int component = from.components[i];
+            if (component < 0) {
+                next[i] = component;
+                continue;
+            }
+            int dest = automata[i].step(component, c);
+            next[i] = (dest != DEAD && automata[i].isAccept(dest)) ? MATCHED : dest;
+        }
+        return intern(next);
+    }
+
+    private TupleState intern(int[] components) {
+        StateKey key = new StateKey(components);
+        TupleState state = states.get(key);
+        if (state == null) {
+            if (states.size() < MAX_CACHED_STATES) {
+                state = new TupleState(components, stateList.size());
+                states.put(key, state);
+                stateList.add(state);
+                if (stateList.size() * 128 > asciiTable.length)
+                    asciiTable = Arrays.copyOf(asciiTable, asciiTable.length * 2);
+            } else {
+                state = new TupleState(components, -1);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Translates a java.util.regex pattern into the brics syntax (with no optional features), keeping the strings
+     * it finds matches in.
+     *
+     * @param regex Java regex
+     * @return brics regex, or null if the regex uses constructs brics cannot express
+     */
+    static String toBricsSyntax(String regex) {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        int n = regex.length();
+        while (i < n) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\': {
+                    if (i + 1 >= n)
+                        return null;
+                    String escape = escapeClass(regex.charAt(i + 1), false);
+                    if (escape == null)
+                        return null;
+                    out.append(escape);
+                    i += 2;
+                    break;
+                }
+                case '[': {
+                    int end = appendClass(regex, i, out);
+                    if (end < 0)
+                        return null;
+                    i = end + 1;
+                    break;
+                }
+                case '(':
+                    if (i + 1 < n && regex.charAt(i + 1) == '?') {
+                        // only non-capturing groups
+                        if (i + 2 >= n || regex.charAt(i + 2) != ':')
+                            return null;
+                        i += 3;
+                    } else {
+                        i++;
+                    }
+                    out.append('(');
+                    break;
+                case ')':
+                case '|':
+                    out.append(c);
+                    i++;
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                case '{': {
+                    int end = i;
+                    if (c == '{') {
+                        end = regex.indexOf('}', i);
+                        if (end < 0 || !regex.substring(i + 1, end).matches("\\d+(,\\d*)?"))
+                            return null;
+                    }
+                    out.append(regex, i, end + 1);
+                    i = end + 1;
+                    // reluctant quantifiers find the same strings; possessive ones may not
+                    if (i < n && regex.charAt(i) == '?')
+                        i++;
+                    else if (i < n && regex.charAt(i) == '+')
+                        return null;
+                    break;
+                }
+                case '.':
+                    out.append("[^").append(escapeAll(LINE_TERMINATORS)).append(']');
+                    i++;
+                    break;
+                case '^':
+                case '$':
+                    return null;
+                default:
+                    out.append(escapeChar(c));
+                    i++;
+            }
+        }
+        try {
+            // e.g. empty alternatives, which Java allows and brics does not
+            new RegExp(out.toString(), RegExp.NONE);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends the character class starting at regex[start] ('[').
+     *
+     * @return index of the closing ']', or -1 if the class cannot be translated
+     */
+    private static int appendClass(String regex, int start, StringBuilder out) {
+        int i = start + 1;
+        int n = regex.length();
+        out.append('[');
+        if (i < n && regex.charAt(i) == '^') {
+            out.append('^');
+            i++;
+        }
+        boolean first = true;
+        // true if the last item was a single character, which a '-' can turn into a range
+        boolean afterChar = false;
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (c == ']' && !first) {
+                out.append(']');
+                return i;
+            }
+            first = false;
+            if (c == '[' || (c == '&' && i + 1 < n && regex.charAt(i + 1) == '&'))
+                return -1; // unions and intersections of classes
+            if (c == '-' && afterChar && i + 1 < n && regex.charAt(i + 1) != ']') {
+                char last = regex.charAt(i + 1);
+                if (last == '[')
+                    return -1;
+                out.append('-');
+                if (last == '\\') {
+                    if (i + 2 >= n || Character.isLetterOrDigit(regex.charAt(i + 2)))
+                        return -1;
+                    out.append(escapeChar(regex.charAt(i + 2)));
+                    i += 3;
+                } else {
+                    out.append(escapeChar(last));
+                    i += 2;
+                }
+                afterChar = false;
+            } else if (c == '\\') {
+                if (i + 1 >= n)
+                    return -1;
+                String escape = escapeClass(regex.charAt(i + 1), true);
+                if (escape == null)
+                    return -1;
+                out.append(escape);
+                afterChar = !"dwsDWS".contains(String.valueOf(regex.charAt(i + 1)));
+                i += 2;
+            } else {
+                out.append(escapeChar(c));
+                afterChar = true;
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param c       character after a backslash
+     * @param inClass true inside a character class, where only the ranges of a predefined class can be used
+     * @return brics equivalent, or null if there is none
+     */
+    private static String escapeClass(char c, boolean inClass) {
+        switch (c) {
+            case 'd':
+                return inClass ? "0-9" : "[0-9]";
+            case 'w':
+                return inClass ? "a-zA-Z_0-9" : "[a-zA-Z_0-9]";
+            case 's':
+                return inClass ? escapeAll(" \t\n\u000B\f\r") : "[" + escapeAll(" \t\n\u000B\f\r") + "]";
+            case 'D':
+                return inClass ? null : "[^0-9]";
+            case 'W':
+                return inClass ? null : "[^a-zA-Z_0-9]";
+            case 'S':
+                return inClass ? null : "[^" + escapeAll(" \t\n\u000B\f\r") + "]";
+            case 't':
+                return escapeChar('\t');
+            case 'n':
+                return escapeChar('\n');
+            case 'r':
+                return escapeChar('\r');
+            case 'f':
+                return escapeChar('\f');
+            default:
+                // other letters and digits are anchors, back references or code points
+                if (Character.isLetterOrDigit(c))
+                    return null;
+                return escapeChar(c);
+        }
+    }
+
+    private static String escapeAll(String chars) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < chars.length(); i++)
+            sb.append(escapeChar(chars.charAt(i)));
+        return sb.toString();
+    }
+
+    private static String escapeChar(char c) {
+        return Character.isLetterOrDigit(c) ? String.valueOf(c) : "\\" + c;
+    }
+
+    private final class TupleState {
+        /** index in stateList, or -1 if the state is not cached */
+        final int id;
+        final int[] components;
+        /** regexes matched on the way to this state */
+        final int[] matched;
+        /** true if every regex has matched or can no longer match */
+        final boolean finished;
+        private HashMap<Character, TupleState> other;
+
+        TupleState(int[] components, int id) {
+            this.id = id;
+            this.components = components;
+            int matchedCount = 0;
+            boolean allDone = true;
+            for (int component : components) {
+                if (component == MATCHED)
+                    matchedCount++;
+                else if (component != DEAD)
+                    allDone = false;
+            }
+            this.matched = new int[matchedCount];
+            for (int i = 0, n = 0; i < components.length; i++) {
+                if (components[i] == MATCHED)
+                    matched[n++] = i;
+            }
+            this.finished = allDone;
+        }
+
+        TupleState next(char c) {
+            if (c < 128) {
+                TupleState next = step(this, c);
+                if (next.id >= 0)
+                    asciiTable[(id << 7) | c] = next.id + 1;
+                return next;
+            }
+            if (other == null)
+                other = new HashMap<>();
+            TupleState next = other.get(c);
+            if (next == null) {
+                next = step(this, c);
+                other.put(c, next);
+            }
+            return next;
+        }
+    }
+
+    private static final class StateKey {
+        private final int[] components;
+        private final int hash;
+
+        StateKey(int[] components) {
+            this.components = components;
+            this.hash = Arrays.hashCode(components);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey && Arrays.equals(components, ((StateKey) o).components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -4,11 +4,19 @@ import com.poco.Extractor.Closure;
 import com.poco.PoCoParser.PoCoParser;
 import com.poco.PoCoParser.PoCoParserBaseVisitor;
 import org.antlr.v4.runtime.misc.NotNull;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.Trees;
 
 import java.io.PrintWriter;
 import java.lang.reflect.Field;
 import java.security.cert.PolicyNode;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -72,12 +80,23 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
     //use to save the transactions that need to be added into Util
     private String transactions = null;
     private String policyName = null;
+    //name of the class generated for Main(), the policy the aspect instantiates
+    private String mainPolicyName = "Main";
+    //generate policies that flatten their executions into state machines
+    private boolean stateMachines = false;
+    //let combined trees skip the children that can no longer change their result
+    private boolean shortCircuit = false;
+    //policies whose exchanges only return constant SREs, so trees made of them can be precombined
+    private HashSet<String> constantPolicies = new HashSet<String>();
 
     //use to store the compound RE string.
     // e.g., map (Union,  -`$GetMail()|Message{%}.getSubject()', ...>*
     private String compoundRe  = null;
     private boolean isCompoundRe = false;
 
+    //positive SRE strings the policy can return, i.e. the actions it may promote
+    private LinkedHashSet<String> promotions = new LinkedHashSet<String>();
+
     /**
      * Constructor
      *
@@ -155,8 +174,10 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
     @Override
     public Void visitPocopol(@NotNull PoCoParser.PocopolContext ctx) {
         policyName = ctx.id().getText();
+        if (isConstantPolicy(ctx))
+            constantPolicies.add(policyName);
 
-        outLine(0, "class %s extends Policy {", policyName);
+        outLine(0, "class %s extends %s {", policyName, stateMachines ? "StateMachinePolicy" : "Policy");
         outLine(1, "public %s() {", policyName);
         outLine(2, "try {");
         outLine(3, "SequentialExecution rootExec = new SequentialExecution(\"none\");");
@@ -502,6 +523,7 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
                 //SreUop is not null, then we treat pos differently
                 String sreName = "sre" + sreNum++;
                 outLine(3, "SRE %s = new SRE(%s, null);", sreName, ctx.qid().getText());
+                //the SRE is the variable's value, only known at runtime, so it is not a promotion to compile
                 if (!sreNames.empty())
                     setSREvalue(sreNames.peek(), sreName);
                 else
@@ -561,8 +583,10 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
             while(compoundRe.endsWith("|"))
                 compoundRe = compoundRe.substring(0, compoundRe.length() - 1).trim();
             if (isSre) {
-                if (isSrePos)
+                if (isSrePos) {
                     outLine(3, "%s.setPositiveRE(\"%s\");", sreNames.peek(), compoundRe.replace("\\", "\\\\").trim());
+                    promotions.add(compoundRe.trim());
+                }
                 else
                     outLine(3, "%s.setNegativeRE(\"%s\");", sreNames.peek(), compoundRe.replace("\\", "\\\\").trim());
                 if (isMapSre)
@@ -675,8 +699,10 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
             }
             else {
                 if (isSre) {
-                    if (isSrePos)
+                    if (isSrePos) {
                         outLine(3, "%s.setPositiveRE(\"%s\");", sreNames.peek(), content.replace("\\", "\\\\").trim());
+                        promotions.add(content.trim());
+                    }
                     else
                         outLine(3, "%s.setNegativeRE(\"%s\");", sreNames.peek(), content.replace("\\", "\\\\").trim());
                     if (isMapSre)
@@ -710,6 +736,34 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
         return null;
     }
 
+    /**
+     * @return every positive SRE string the generated policy sets, as the runtime will see it
+     */
+    public Set<String> getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * @param mainPolicyName name of the class to generate for a Main() metapolicy
+     */
+    public void setMainPolicyName(String mainPolicyName) {
+        this.mainPolicyName = mainPolicyName;
+    }
+
+    /**
+     * @param stateMachines true to generate StateMachinePolicy subclasses instead of Policy subclasses
+     */
+    public void setStateMachines(boolean stateMachines) {
+        this.stateMachines = stateMachines;
+    }
+
+    /**
+     * @param shortCircuit true to call setShortCircuit(true) on every generated CombinedPolicy
+     */
+    public void setShortCircuit(boolean shortCircuit) {
+        this.shortCircuit = shortCircuit;
+    }
+
     public boolean hasTransation() {
         if (transactions != null)
             return true;
@@ -805,130 +859,172 @@ public class PolicyVisitor extends PoCoParserBaseVisitor<Void> {
     }
 
     /**
-     * Generates code for class representing a Main tree policy.
+     * Generates code for class representing a tree-defining policy (metapolicy). Each tree definition becomes a
+     * method creating a new instance of that tree, so a tree referenced as name() gets its own copy. The policy's
+     * tree is the last one defined.
      *
      * @param ctx
      * @return
      */
-    /*@Override
+    @Override
     public Void visitMetapol(@NotNull PoCoParser.MetapolContext ctx) {
+        // Main() is the policy the aspect instantiates, so it takes the name of the policy file
+        String className = (ctx.MAIN() != null) ? mainPolicyName : ctx.id().getText();
+        List<PoCoParser.TreedefContext> treedefs = new ArrayList<>();
+        collectTreedefs(ctx.treedefs(), treedefs);
+        Set<String> treeNames = new HashSet<>();
+        for (PoCoParser.TreedefContext treedef : treedefs) {
+            treeNames.add(treedef.id(0).getText());
+        }
 
-        outLine(0, "class MainPolicy extends Policy {");
-        outLine(1, "private Stack<String> monitoringEvents;");
-        outLine(1, "private ArrayList<Policy> children;");
-        outLine(1, "public MainPolicy() {");
-        outLine(2, "children = new ArrayList<Policy>();");
-        //iterate through policies and add to list
-        AddPolicies(ctx.treedefs());
-        outLine(2, "this.monitoringEvents = new Stack<>();");
-        outLine(1, "}");
+        // tree name -> code creating the tree, in order of definition
+        LinkedHashMap<String, String> trees = new LinkedHashMap<>();
+        Set<String> referenced = new HashSet<>();
+        // code of the trees and policies that only return constant SREs
+        Set<String> constantCode = new HashSet<>();
+        Set<String> precombined = new HashSet<>();
+        Set<String> combined = new HashSet<>();
+        String rootTree = null;
+        for (PoCoParser.TreedefContext treedef : treedefs) {
+            if (treedef.EQUALSIGN() == null)
+                continue; // only declared here, defined by an @name[...] argument
+            String treeName = treedef.id(0).getText();
+            List<String> args = policyArgsCode(treedef.policyargs(), treeNames, trees, referenced, constantCode);
+            String code;
+            if (treedef.srebop() != null) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("new CombinedPolicy(\"").append(treedef.srebop().getText()).append('"');
+                for (String arg : args) {
+                    sb.append(", ").append(arg);
+                }
+                code = sb.append(')').toString();
+                combined.add(treeName);
+                if (constantCode.containsAll(args)) {
+                    precombined.add(treeName);
+                    constantCode.add(treeMethod(treeName) + "()");
+                }
+            } else {
+                code = policyRefCode(treedef.id(1).getText(), args, treeNames, referenced, constantCode);
+                if (constantCode.contains(code))
+                    constantCode.add(treeMethod(treeName) + "()");
+            }
+            trees.put(treeName, code);
+            rootTree = treeName;
+        }
+        for (String treeName : referenced) {
+            if (!trees.containsKey(treeName)) {
+                System.out.printf("ERROR: tree '%s' is used in '%s' but never defined\n", treeName, className);
+                System.exit(-1);
+            }
+        }
+        if (rootTree == null) {
+            System.out.printf("ERROR: '%s' does not define any tree\n", className);
+            System.exit(-1);
+        }
 
-        outLine(1,  "public void queryAction(Event event) {");
-        outLine(2,  "ArrayList<SRE> results = new ArrayList<SRE>");
-        //iterate through policies and query all
-        AddQueries(ctx);
-        outLine(2,  "monitoringEvents.push(event.getSignature());");
-        outLine(2,  "//when accept is false, the returned SRE value is NULL");
-        //TODO: not looping through all children yet
-        outLine(2,  "if (results.get(0) == null) {");
-        outLine(3,  "monitoringEvents.pop();");
-        outLine(3,  "System.exit(-1);");
-        outLine(2,  "}");
-        outLine(2,  "boolean posMatch = false;");
-        outLine(2,  "boolean negMatch = false;");
-        outLine(2,  "if (result.get(0).positiveRE().length() > 0) {");
-        outLine(3,  "boolean promoted = false;");
-        outLine(3,  "//if the monitoringEvent is Result, it should be popped on the stack,");
-        outLine(3,  "//since we already get the result");
-        outLine(3,  "if(!monitoringEvents.empty())");
-        outLine(4,  "if(event.eventType!= null && event.eventType.equals(\"Result\"))");
-        outLine(5,  "monitoringEvents.pop();");
-        outLine(4,  "if(monitoringEvents.peek().contains(result.get(0).positiveRE().toString())) {");
-        outLine(5,  "promoted = true;");
-        outLine(4,  "}");
-        outLine(4,  "if (promoted) {");
-        outLine(5,  "System.out.println(\"the action is allowed\");");
-        outLine(5,  "monitoringEvents.pop();");
-        outLine(4,  "} else {");
-        outLine(5,  "try {");
-        outLine(6,  "Promoter.Reflect(result.get(0).positiveRE());");
-        outLine(5,  "} catch (Exception ex) {");
-        outLine(6,  "ex.printStackTrace();");
-        outLine(5,  "}");
-        outLine(4,  "}");
-        outLine(3,  "}");
-        outLine(3,  "if (result.get(0).negativeRE().length() > 0) {");
-        outLine(4,  "// if already on stack, show System.exit(-1);");
-        outLine(4,  "Pattern negPat = Pattern.compile(result.get(0).negativeRE());");
-        outLine(4,  "Matcher negMatcher = negPat.matcher(event.getSignature());");
-        outLine(4,  "negMatch = negMatcher.find();");
-        outLine(3,  "}");
-        outLine(3,  "if (posMatch) {");
-        outLine(4,  "return;");
-        outLine(3,  "}");
-        outLine(3,  "if (negMatch) {");
-        outLine(4,  "System.exit(-1);");
-        outLine(3,  "}");
-        outLine(2,  "}");
-        outLine(1,  "}");
+        outLine(0, "class %s extends TreePolicy {", className);
+        outLine(1, "public %s() {", className);
+        outLine(2, "setTree(%s());", treeMethod(rootTree));
+        outLine(1, "}");
+        for (Map.Entry<String, String> tree : trees.entrySet()) {
+            outLine(1, "private Policy %s() {", treeMethod(tree.getKey()));
+            boolean shortCircuited = shortCircuit && combined.contains(tree.getKey());
+            if (precombined.contains(tree.getKey()) || shortCircuited) {
+                outLine(2, "CombinedPolicy tree = %s;", tree.getValue());
+                if (shortCircuited)
+                    outLine(2, "tree.setShortCircuit(true);");
+                // its children only return constant SREs: combine them all once, here
+                if (precombined.contains(tree.getKey()))
+                    outLine(2, "tree.precombine();");
+                outLine(2, "return tree;");
+            } else {
+                outLine(2, "return %s;", tree.getValue());
+            }
+            outLine(1, "}");
+        }
         outLine(0, "}");
-
         return null;
     }
 
-    private void AddPolicies(PoCoParser.TreedefsContext ctx)
-    {
-        PoCoParser.TreedefContext treedef = ctx.treedef();
-        AddTreePolicies(treedef);
-        PoCoParser.TreedefsContext treedefs = ctx.treedefs();
-        if(treedefs != null)
-        {
-            AddPolicies(treedefs);
-        }
+    private static void collectTreedefs(PoCoParser.TreedefsContext ctx, List<PoCoParser.TreedefContext> treedefs) {
+        if (ctx.treedefs() != null)
+            collectTreedefs(ctx.treedefs(), treedefs);
+        treedefs.add(ctx.treedef());
     }
 
-    private void AddTreePolicies(PoCoParser.TreedefContext ctx)
-    {
-        if(ctx.id().size() > 1)
-        {
-            String policyName = ctx.id(1).getText();
-            outLine(2,  "children.add(new %s());", policyName);
-        }
-        PoCoParser.PolicyargsContext policyargs = ctx.policyargs();
-        if(policyargs != null)
-        {
-            AddPolicyArgsPolicies(policyargs);
+    /**
+     * @return code creating each argument, in order; @name[arg] arguments also define the tree name
+     */
+    private List<String> policyArgsCode(PoCoParser.PolicyargsContext ctx, Set<String> treeNames,
+                                        Map<String, String> trees, Set<String> referenced, Set<String> constantCode) {
+        List<String> args = new ArrayList<>();
+        if (ctx == null)
+            return args;
+        args.addAll(policyArgsCode(ctx.policyargs(), treeNames, trees, referenced, constantCode));
+        if (ctx.policyarg() != null)
+            args.add(policyArgCode(ctx.policyarg(), treeNames, trees, referenced, constantCode));
+        return args;
+    }
+
+    private String policyArgCode(PoCoParser.PolicyargContext ctx, Set<String> treeNames,
+                                 Map<String, String> trees, Set<String> referenced, Set<String> constantCode) {
+        if (ctx.AT() != null) {
+            String code = policyArgCode(ctx.policyarg(), treeNames, trees, referenced, constantCode);
+            String treeName = ctx.id().getText();
+            trees.put(treeName, code);
+            if (constantCode.contains(code))
+                constantCode.add(treeMethod(treeName) + "()");
+            return code;
         }
+        List<String> args = policyArgsCode(ctx.policyargs(), treeNames, trees, referenced, constantCode);
+        return policyRefCode(ctx.id().getText(), args, treeNames, referenced, constantCode);
     }
 
-    private void AddPolicyArgsPolicies(PoCoParser.PolicyargsContext ctx)
-    {
-        PoCoParser.PolicyargContext policyarg = ctx.policyarg();
-        AddPolicyArgPolicies(policyarg);
-        if(ctx.policyargs() != null)
-        {
-            AddPolicyArgsPolicies(ctx.policyargs());
+    /**
+     * @return code creating the named tree or policy
+     */
+    private String policyRefCode(String name, List<String> args, Set<String> treeNames, Set<String> referenced,
+                                 Set<String> constantCode) {
+        if (!args.isEmpty()) {
+            // TODO: Support actual policy parameters (see visitParamlist). Until then the arguments cannot be
+            // enforced, and dropping them would enforce less than the policy says
+            System.out.printf("ERROR: '%s' is given arguments in a policy tree; policies with policy parameters " +
+                    "are not supported yet\n", name);
+            System.exit(-1);
+        }
+        if (treeNames.contains(name)) {
+            referenced.add(name);
+            return treeMethod(name) + "()";
         }
+        String code = "new " + name + "()";
+        if (constantPolicies.contains(name))
+            constantCode.add(code);
+        return code;
     }
 
-    private void AddPolicyArgPolicies(PoCoParser.PolicyargContext ctx)
-    {
-        if(ctx != null) {
-            if (ctx.AT() == null) {
-                String policyName = ctx.id().getText();
-                outLine(2, "children.add(new %s());", policyName);
-                AddPolicyArgsPolicies(ctx.policyargs());
-            }
-            else
-            {
-                AddPolicyArgPolicies(ctx.policyarg());
-            }
+    /**
+     * @return true if every exchange of the policy returns a constant SRE: Neutral, or +/- an RE without variables
+     *         or macros. Map executions and exchanges naming other policies compute their results.
+     */
+    private static boolean isConstantPolicy(PoCoParser.PocopolContext ctx) {
+        if (!Trees.findAllRuleNodes(ctx, PoCoParser.RULE_map).isEmpty())
+            return false;
+        for (ParseTree node : Trees.findAllRuleNodes(ctx, PoCoParser.RULE_exch)) {
+            PoCoParser.SreContext sre = ((PoCoParser.ExchContext) node).sre();
+            if (sre == null)
+                return false;
+            if (sre.NEUTRAL() != null)
+                continue;
+            if (sre.PLUS() == null && sre.MINUS() == null)
+                return false;
+            String re = sre.re().getText();
+            if (re.contains("$") || re.contains("@"))
+                return false;
         }
+        return true;
     }
 
-    private void AddQueries(PoCoParser.MetapolContext ctx) {
-        outLine(2,  "for (i=0; i < children.size(); i++) {");
-        outLine(3,  "results.add(children.get(i).query(event));");
-        outLine(2,  "}");
-    }*/
+    private static String treeMethod(String treeName) {
+        return "tree" + Character.toUpperCase(treeName.charAt(0)) + treeName.substring(1);
+    }
 }
\ No newline at end of file
@@ -8,16 +8,42 @@ import java.util.regex.Pattern;
 
 /**
  * Class that generates a mapping of regular expressions to method signatures.
+ *
+ * By default every regex is tested against every signature. With the INDEX strategy, signatures are first indexed by
+ * the identifiers they contain, and a regex that spells out a package, class or method name with escaped dots is only
+ * tested against the signatures containing it. The index is built from all signatures on each mapping, so it does not
+ * pay for itself with the few regexes a policy has. The AUTOMATON strategy also combines the regexes brics can express
+ * into one automaton (MultiPatternMatcher), so each signature is read once for all of them; it only pays off on very
+ * large signature sets.
  */
 public class RegexMapper {
+    public enum Strategy {
+        /** every regex is tested against every signature */
+        SCAN,
+        /** regexes are tested against the signatures the identifier index selects, if it can select any */
+        INDEX,
+        /** regexes brics can express are matched in one automaton pass; INDEX for the others */
+        AUTOMATON
+    }
+
     private final Collection<String> regexes;
-    private final Collection<String> signatures;
+    private final Iterable<String> signatures;
+    private final Strategy strategy;
     private final LinkedHashMap<String, ArrayList<String>> mappings;
     private boolean mapGenerated = false;
 
-    public RegexMapper(Collection<String> regexes, Collection<String> signatures) {
+    public RegexMapper(Collection<String> regexes, Iterable<String> signatures) {
+        this(regexes, signatures, Strategy.SCAN);
+    }
+
+    /**
+     * @param signatures signatures to map; read once by AUTOMATON if every regex can be combined, so they can be
+     *                   streamed from a SignatureFile
+     */
+    public RegexMapper(Collection<String> regexes, Iterable<String> signatures, Strategy strategy) {
         this.regexes = regexes;
         this.signatures = signatures;
+        this.strategy = strategy;
         this.mappings = new LinkedHashMap<>(regexes.size());
     }
 
@@ -26,10 +52,41 @@ public class RegexMapper {
             return;
         }
 
-        for(String regex : regexes) {
+        ArrayList<String> remaining = new ArrayList<>();
+        for (String regex : regexes) {
+            // keeps the mappings in the order of the regexes
+            mappings.put(regex, new ArrayList<String>());
+            remaining.add(regex);
+        }
+        if (strategy == Strategy.AUTOMATON) {
+            remaining = mapWithAutomaton(remaining);
+        }
+
+        IdentifierIndex index = null;
+        if (strategy != Strategy.SCAN && !remaining.isEmpty()) {
+            ArrayList<String> signatureList = new ArrayList<>();
+            for (String signature : signatures) {
+                signatureList.add(signature);
+            }
+            index = new IdentifierIndex(signatureList.toArray(new String[signatureList.size()]));
+        }
+        for(String regex : remaining) {
             Pattern pat = Pattern.compile(regex);
             ArrayList<String> mappedSignatures = new ArrayList<>();
 
+            // only test the signatures that contain the identifiers the regex spells out
+            int[] candidates = (index == null) ? null : index.candidates(regex);
+            if (candidates != null) {
+                for (int candidate : candidates) {
+                    String signature = index.signature(candidate);
+                    if (pat.matcher(signature).find()) {
+                        mappedSignatures.add(signature);
+                    }
+                }
+                mappings.put(regex, mappedSignatures);
+                continue;
+            }
+
             for(String signature : signatures) {
                 Matcher match = pat.matcher(signature);
                 if(match.find()) {
@@ -43,6 +100,40 @@ public class RegexMapper {
         mapGenerated = true;
     }
 
+    /**
+     * Maps the regexes brics can express in a single pass over the signatures.
+     *
+     * @return the regexes left to map
+     */
+    private ArrayList<String> mapWithAutomaton(ArrayList<String> regexList) {
+        ArrayList<String> others = new ArrayList<>();
+        ArrayList<String> combined = new ArrayList<>();
+        ArrayList<String> bricsRegexes = new ArrayList<>();
+        for (String regex : regexList) {
+            String bricsRegex = MultiPatternMatcher.toBricsSyntax(regex);
+            if (bricsRegex == null) {
+                others.add(regex);
+            } else if (!combined.contains(regex)) {
+                combined.add(regex);
+                bricsRegexes.add(bricsRegex);
+            }
+        }
+        if (combined.isEmpty())
+            return others;
+
+        MultiPatternMatcher matcher = new MultiPatternMatcher(bricsRegexes.toArray(new String[bricsRegexes.size()]));
+        ArrayList<ArrayList<String>> mapped = new ArrayList<>();
+        for (String regex : combined) {
+            mapped.add(mappings.get(regex));
+        }
+        for (String signature : signatures) {
+            for (int matched : matcher.matches(signature)) {
+                mapped.get(matched).add(signature);
+            }
+        }
+        return others;
+    }
+
     public LinkedHashMap<String, ArrayList<String>> getMappings() {
         return mappings;
     }
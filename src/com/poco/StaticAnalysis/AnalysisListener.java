@@ -0,0 +1,88 @@
+package com.poco.StaticAnalysis;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes every event of a single tree walk on to several analyses, so the tree is only traversed once however many
+ * analyses run. An analysis that throws is reported and gets no further events; the others carry on.
+ */
+public class AnalysisListener implements ParseTreeListener {
+    private final List<ParseTreeListener> listeners = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<Boolean> failed = new ArrayList<>();
+
+    /**
+     * @param name     description of the analysis, used in the error message if it fails
+     * @param listener the analysis
+     */
+    public void add(String name, ParseTreeListener listener) {
+        names.add(name);
+        listeners.add(listener);
+        failed.add(false);
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        for (int i = 0; i < listeners.size(); i++) {
+            if (failed.get(i))
+                continue;
+            try {
+                listeners.get(i).enterEveryRule(ctx);
+                ctx.enterRule(listeners.get(i));
+            } catch (Exception ex) {
+                fail(i);
+            }
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        for (int i = 0; i < listeners.size(); i++) {
+            if (failed.get(i))
+                continue;
+            try {
+                ctx.exitRule(listeners.get(i));
+                listeners.get(i).exitEveryRule(ctx);
+            } catch (Exception ex) {
+                fail(i);
+            }
+        }
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        for (int i = 0; i < listeners.size(); i++) {
+            if (failed.get(i))
+                continue;
+            try {
+                listeners.get(i).visitTerminal(node);
+            } catch (Exception ex) {
+                fail(i);
+            }
+        }
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        for (int i = 0; i < listeners.size(); i++) {
+            if (failed.get(i))
+                continue;
+            try {
+                listeners.get(i).visitErrorNode(node);
+            } catch (Exception ex) {
+                fail(i);
+            }
+        }
+    }
+
+    private void fail(int i) {
+        failed.set(i, true);
+        System.out.println("Error: There was an error performing '" + names.get(i) + "'");
+    }
+}
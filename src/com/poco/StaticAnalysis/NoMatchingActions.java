@@ -14,10 +14,10 @@ public class NoMatchingActions extends PoCoParserBaseListener {
     List<String> start;
     boolean finalresult = true;
     String errorsegment = "";
-    LinkedHashSet<String> possibleinputs;
+    Iterable<String> possibleinputs;
     Map<String, String> bindings;
 
-    public NoMatchingActions(PoCoParser parser, LinkedHashSet<String> possibleinputs) {
+    public NoMatchingActions(PoCoParser parser, Iterable<String> possibleinputs) {
         this.parser = parser;
         this.start = new ArrayList<String>();
         this.possibleinputs = possibleinputs;
@@ -18,7 +18,7 @@ public class NondeterministicLoops extends PoCoParserBaseListener {
     boolean finalresult = false;
     String errorsegment1 = "";
     String errorsegment2 = "";
-    LinkedHashSet<String> possibleinputs;
+    Iterable<String> possibleinputs;
     Map<String, String> bindings;
 
     public NondeterministicLoops(PoCoParser parser) {
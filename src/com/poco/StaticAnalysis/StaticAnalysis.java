@@ -11,63 +11,56 @@ import java.util.LinkedHashSet;
 import java.util.List;
 
 public class StaticAnalysis {
-    LinkedHashSet<String> methods = new LinkedHashSet<String>();
+    LinkedHashSet<String> methods;
 
-    public void StaticAnalysis(CharStream input, LinkedHashSet<String> possibleinputs)
+    public void StaticAnalysis(CharStream input, final Iterable<String> possibleinputs)
     {
-        Iterator<String> itr = possibleinputs.iterator();
-        while (itr.hasNext()) {
-            String method = itr.next().replace("\\(.*\\)", "");
-            method = method.substring(method.indexOf(' ') + 1);
-            methods.add(method);
-        }
+        methods = withoutReturnTypes(possibleinputs);
 
         PoCoLexer lexer = new PoCoLexer(input);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
         PoCoParser parser = new PoCoParser(tokens);
         ParserRuleContext tree = parser.policy(); // parse
-        ParseTreeWalker walker = new ParseTreeWalker(); // create standard walker
-        try {
-            UncoveredExecutionPaths uncoveredExecutionPaths = new UncoveredExecutionPaths(parser, methods);
-            walker.walk(uncoveredExecutionPaths, tree);
-        }
-        catch(Exception ex){
-            System.out.println("Error: There was an error performing 'Uncovered Execution Paths'");
-        }
-        try {
-            NoMatchingActions noMatchingActions = new NoMatchingActions(parser, methods);
-            walker.walk(noMatchingActions, tree);
-        }
-        catch(Exception ex){
-            System.out.println("Error: There was an error performing 'No Matching Actions'");
-        }
-        try {
-            UnusedBindings unusedBindings = new UnusedBindings(parser);
-            walker.walk(unusedBindings, tree);
-        }
-        catch(Exception ex){
-            System.out.println("Error: There was an error performing 'Unused Bindings'");
-        }
-        try {
-            NondeterministicLoops nondeterministicLoops = new NondeterministicLoops(parser);
-            walker.walk(nondeterministicLoops, tree);
-        }
-        catch(Exception ex){
-            System.out.println("Error: There was an error performing 'Nondeterministic Loops'");
-        }
-        try {
-            InfinitePositiveNoConcrete infinitePositiveNoConcrete = new InfinitePositiveNoConcrete(parser);
-            walker.walk(infinitePositiveNoConcrete, tree);
-        }
-        catch(Exception ex){
-            System.out.println("Error: There was an error performing 'Infinite Positive Result With No Concrete Events'");
-        }
-        try {
-            EmptyPositiveNegativeInput emptyPositiveNegativeInput = new EmptyPositiveNegativeInput(parser);
-            walker.walk(emptyPositiveNegativeInput, tree);
-        }
-        catch(Exception ex){
-            System.out.println("Error: There was an error performing 'Empty Positive with Negative Input'");
+        analyze(parser, tree);
+    }
+
+    /**
+     * Runs the analyses on a policy that has already been parsed, e.g. by the compiler. All of them share a single
+     * walk of the tree.
+     *
+     * @param parser         parser that built the tree
+     * @param tree           parse tree of the policy
+     * @param possibleinputs signatures of the methods the policy can see
+     */
+    public void StaticAnalysis(PoCoParser parser, ParseTree tree, final Iterable<String> possibleinputs)
+    {
+        methods = withoutReturnTypes(possibleinputs);
+        analyze(parser, tree);
+    }
+
+    private void analyze(PoCoParser parser, ParseTree tree)
+    {
+        AnalysisListener analyses = new AnalysisListener();
+        analyses.add("Uncovered Execution Paths", new UncoveredExecutionPaths(parser, methods));
+        analyses.add("No Matching Actions", new NoMatchingActions(parser, methods));
+        analyses.add("Unused Bindings", new UnusedBindings(parser));
+        analyses.add("Nondeterministic Loops", new NondeterministicLoops(parser));
+        analyses.add("Infinite Positive Result With No Concrete Events", new InfinitePositiveNoConcrete(parser));
+        analyses.add("Empty Positive with Negative Input", new EmptyPositiveNegativeInput(parser));
+        new ParseTreeWalker().walk(analyses, tree);
+    }
+
+    /**
+     * @return signatures without their return types; the signatures are read once, however often the analyses go
+     *         through them or stop early
+     */
+    private static LinkedHashSet<String> withoutReturnTypes(Iterable<String> possibleinputs)
+    {
+        LinkedHashSet<String> methods = new LinkedHashSet<String>();
+        for (String signature : possibleinputs) {
+            String method = signature.replace("\\(.*\\)", "");
+            methods.add(method.substring(method.indexOf(' ') + 1));
         }
+        return methods;
     }
 }
@@ -17,10 +17,10 @@ public class UncoveredExecutionPaths extends PoCoParserBaseListener {
     List<String> start;
     boolean finalresult = true;
     String errorsegment = "";
-    LinkedHashSet<String> possibleinputs;
+    Iterable<String> possibleinputs;
     Map<String, String> bindings;
 
-    public UncoveredExecutionPaths(PoCoParser parser, LinkedHashSet<String> possibleinputs) {
+    public UncoveredExecutionPaths(PoCoParser parser, Iterable<String> possibleinputs) {
         this.parser = parser;
         this.start = new ArrayList<String>();
         this.possibleinputs = possibleinputs;
@@ -0,0 +1,79 @@
+package com.poco.PoCoCompiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rough comparison of the RegexMapper strategies on 10k, 100k and 1M generated method signatures. Not part of the
+ * compiler; run its main method by hand (with a heap of about 2GB for the largest size).
+ */
+public class RegexMapperBenchmark {
+    private static final int[] SIZES = {10000, 100000, 1000000};
+    private static final int RUNS = 3;
+
+    /** regexes of the kind the policies in the PoCo test library produce */
+    private static final List<String> REGEXES = Arrays.asList(
+            "java\\.io\\.File\\.<init>\\(",
+            "java\\.io\\.FileWriter\\.<init>\\(java\\.lang\\.String",
+            "java\\.net\\.Socket\\.<init>\\(",
+            "java\\.lang\\.Runtime\\.exec\\(",
+            "java\\.lang\\.ClassLoader\\.<init>\\(",
+            "javax\\.mail\\.Transport\\.send\\(",
+            "java\\.lang\\.reflect\\.Method\\.invoke\\(",
+            "void .*\\.delete\\(\\)",
+            "java\\.sql\\..*\\.execute(Query|Update)?\\(",
+            "\\.get[A-Z]\\w*Connection\\(",
+            "Runtime\\.exec",
+            "FileOutputStream");
+
+    private static final String[] PACKAGES = {"java.io", "java.net", "java.lang", "java.lang.reflect", "java.sql",
+            "javax.mail", "org.apache.commons.io", "com.example.app", "com.example.app.util", "org.objectweb.asm"};
+    private static final String[] CLASSES = {"File", "FileWriter", "Socket", "Runtime", "ClassLoader", "Transport",
+            "Method", "Statement", "Connection", "FileOutputStream", "Helper", "Visitor", "Builder", "Reader"};
+    private static final String[] METHODS = {"<init>", "delete", "exec", "send", "invoke", "executeQuery",
+            "getConnection", "write", "close", "visitMethod", "build", "read", "toString", "hashCode"};
+    private static final String[] TYPES = {"void", "int", "boolean", "java.lang.String", "java.lang.Object",
+            "byte[]", "java.util.List", "long"};
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            List<String> signatures = generate(size);
+            for (RegexMapper.Strategy strategy : RegexMapper.Strategy.values()) {
+                long best = Long.MAX_VALUE;
+                int mapped = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    RegexMapper mapper = new RegexMapper(REGEXES, signatures, strategy);
+                    mapper.mapRegexes();
+                    best = Math.min(best, System.nanoTime() - start);
+                    mapped = 0;
+                    for (ArrayList<String> list : mapper.getMappings().values()) {
+                        mapped += list.size();
+                    }
+                }
+                System.out.printf("%8d signatures  %-10s %8.1f ms (%d mapped)\n", size, strategy, best / 1e6, mapped);
+            }
+        }
+    }
+
+    private static List<String> generate(int size) {
+        Random random = new Random(42);
+        ArrayList<String> signatures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String cls = PACKAGES[random.nextInt(PACKAGES.length)] + "." + CLASSES[random.nextInt(CLASSES.length)]
+                    + (random.nextInt(4) == 0 ? "" : String.valueOf(i % 997));
+            String method = METHODS[random.nextInt(METHODS.length)];
+            StringBuilder params = new StringBuilder();
+            for (int p = random.nextInt(4); p > 0; p--) {
+                if (params.length() > 0)
+                    params.append(", ");
+                params.append(TYPES[1 + random.nextInt(TYPES.length - 1)]);
+            }
+            String returnType = method.equals("<init>") ? "void" : TYPES[random.nextInt(TYPES.length)];
+            signatures.add(returnType + " " + cls + "." + method + "(" + params + ")");
+        }
+        return signatures;
+    }
+}
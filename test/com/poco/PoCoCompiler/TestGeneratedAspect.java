@@ -0,0 +1,86 @@
+package com.poco.PoCoCompiler;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestGeneratedAspect {
+    /**
+     * Compiles a policy without scanning any files.
+     *
+     * @param options compiler options besides -o
+     * @return the generated aspect
+     */
+    private static String compileAspect(String policyName, String policy, String... options) throws IOException {
+        Path outputDir = Files.createTempDirectory("poco");
+        Path policyFile = outputDir.resolve(policyName + ".poco");
+        Files.write(policyFile, policy.getBytes(StandardCharsets.UTF_8));
+        List<String> arguments = new ArrayList<>(Arrays.asList(options));
+        arguments.addAll(Arrays.asList("-o", outputDir.toString(), policyFile.toString()));
+        new Compiler(arguments.toArray(new String[arguments.size()])).compile();
+
+        return new String(Files.readAllBytes(outputDir.resolve("Aspect" + policyName + ".aj")),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the around advice generated for PointCut0
+     */
+    private static String compileAdvice(String policyName, String policy) throws IOException {
+        String aspect = compileAspect(policyName, policy);
+        int start = aspect.indexOf("Object around(java.lang.String value0): PointCut0(value0) {");
+        assertTrue(aspect, start >= 0);
+        return aspect.substring(start, aspect.indexOf("\n    }", start));
+    }
+
+    @Test
+    public void resultPolicyWithFixedConditionsMonitorsTheResult() throws IOException {
+        String advice = compileAdvice("FixedResult", "FixedResult() :\n"
+                + "    <Result(`java.lang.String org.antlr.runtime.misc.Stats.getAbsoluteFileName("
+                + "#java.lang.String{%.txt})', `%') => Neutral>*\n");
+
+        // the condition is checked by the pointcut, and the result is queried after the call
+        assertTrue(advice, advice.contains("event.setEventType(\"Result\");"));
+        assertTrue(advice, advice.indexOf("proceed(value0)") < advice.indexOf("root.queryAction("));
+    }
+
+    @Test
+    public void actionPolicyWithFixedConditionsQueriesBeforeTheCall() throws IOException {
+        String advice = compileAdvice("FixedAction", "FixedAction() :\n"
+                + "    <Action(`java.lang.String org.antlr.runtime.misc.Stats.getAbsoluteFileName("
+                + "#java.lang.String{%.txt})') => Neutral>*\n");
+
+        assertFalse(advice, advice.contains("\"Result\""));
+        assertTrue(advice, advice.indexOf("root.queryAction(") < advice.indexOf("proceed(value0)"));
+    }
+
+    private static final String TREES = "Deny() : <Action(`java.lang.String org.antlr.runtime.misc.Stats."
+            + "getAbsoluteFileName(#java.lang.String{%.txt})') => -`%'>*\n"
+            + "Allow() : <Action(`java.lang.String org.antlr.runtime.misc.Stats."
+            + "getAbsoluteFileName(#java.lang.String{%.txt})') => Neutral>*\n"
+            + "Main():\n"
+            + "tree inner = Punion(Deny(), Allow())\n"
+            + "tree rootNode = Union(inner(), Allow())\n";
+
+    @Test
+    public void treesQueryEveryChildByDefault() throws IOException {
+        String aspect = compileAspect("AllChildren", TREES);
+
+        assertFalse(aspect, aspect.contains("setShortCircuit"));
+    }
+
+    @Test
+    public void shortCircuitOptionAppliesToEveryTree() throws IOException {
+        String aspect = compileAspect("ShortCircuit", TREES, "--shortcircuit");
+
+        assertEquals(aspect, 2, aspect.split("tree\\.setShortCircuit\\(true\\);", -1).length - 1);
+    }
+}